@@ -1,12 +1,176 @@
 const express = require('express')
 const fs = require('fs');
 const path = require('path');
+const zlib = require('zlib');
+const crypto = require('crypto');
+const {pipeline} = require('stream');
 const app = express()
 const port = 3000
 
 const ROOT_DIR = "/";
 
-const fsExplore = (req,res) => {
+// Parses a single "bytes=start-end" range, returns null when absent or unsupported
+const parseRange = (header, size) => {
+    const match = /^bytes=(\d*)-(\d*)$/.exec(header || "");
+    if (!match || (match[1] === "" && match[2] === ""))
+        return null;
+    let start, end;
+    if (match[1] === "") {
+        // suffix range, the last N bytes
+        start = Math.max(0, size - Number(match[2]));
+        end = size - 1;
+    } else {
+        start = Number(match[1]);
+        end = match[2] === "" ? size - 1 : Math.min(Number(match[2]), size - 1);
+    }
+    return {start, end};
+}
+
+// Files that are compressed already gain nothing from gzip
+const COMPRESSED_EXTENSIONS = new Set([".gz", ".bz2", ".zst", ".lz4", ".zip", ".snappy", ".deflate"]);
+
+// Streams a file, or the requested range of it as 206 partial content, without holding it in memory. Whole files are
+// gzipped on the fly when the client accepts it, ranges are always sent as is so their offsets stay byte offsets.
+const sendFile = (req, res, filePath, stat) => {
+    const size = stat.size;
+    res.set("Accept-Ranges", "bytes");
+    res.set("ETag", `W/"${stat.ino.toString(16)}-${size.toString(16)}-${Math.floor(stat.mtimeMs).toString(16)}"`);
+    res.set("Last-Modified", stat.mtime.toUTCString());
+    res.set("Vary", "Accept-Encoding");
+    res.type("application/octet-stream");
+    const range = parseRange(req.get("Range"), size);
+    if (range && (range.start >= size || range.start > range.end)) {
+        res.set("Content-Range", `bytes */${size}`);
+        return res.status(416).end();
+    }
+
+    let streamOptions = {};
+    if (range) {
+        res.status(206);
+        res.set("Content-Range", `bytes ${range.start}-${range.end}/${size}`);
+        res.set("Content-Length", String(range.end - range.start + 1));
+        streamOptions = range;
+    } else if (req.fresh) {
+        return res.status(304).end();
+    }
+    // HEAD reports the length of the file, clients use it to plan their range requests
+    const gzip = !range && req.method !== "HEAD" && !COMPRESSED_EXTENSIONS.has(path.extname(filePath).toLowerCase())
+        && req.acceptsEncodings("gzip", "identity") === "gzip";
+    if (gzip)
+        res.set("Content-Encoding", "gzip");
+    else if (!range)
+        res.set("Content-Length", String(size));
+    if (req.method === "HEAD")
+        return res.end();
+
+    const streams = [fs.createReadStream(filePath, streamOptions)];
+    if (gzip)
+        streams.push(zlib.createGzip());
+    // closes the file and drops the response if either side fails or the client goes away
+    pipeline(...streams, res, () => {});
+}
+
+// Row count kept in the row index sidecar the batch source writes next to an indexed file (see RowIndex.write),
+// undefined if the file has no sidecar or it was built from another version of the file. Only the header is read.
+// The sidecar holds the mtime Hadoop reported, which may be truncated to whole seconds, so seconds are compared.
+const ROW_INDEX_MAGIC = 0x52495831;
+const readRowCount = async (ref, stat) => {
+    let handle;
+    try {
+        handle = await fs.promises.open(path.join(path.dirname(ref), `.${path.basename(ref)}.rowindex`), "r");
+        const {bytesRead, buffer} = await handle.read(Buffer.alloc(64), 0, 64, 0);
+        // magic, file size, mtime, then the delimiter as a length prefixed string, quote flag, interval and row count
+        if (bytesRead < 22 || buffer.readInt32BE(0) !== ROW_INDEX_MAGIC)
+            return undefined;
+        const rowCountAt = 22 + buffer.readUInt16BE(20) + 5;
+        if (bytesRead < rowCountAt + 8 || buffer.readBigInt64BE(4) !== BigInt(stat.size)
+            || buffer.readBigInt64BE(12) / 1000n !== BigInt(Math.floor(stat.mtimeMs / 1000)))
+            return undefined;
+        return Number(buffer.readBigInt64BE(rowCountAt));
+    } catch (e) {
+        return undefined;
+    } finally {
+        if (handle)
+            await handle.close();
+    }
+}
+
+// Reads the visible entries of a directory one at a time, without holding the whole listing in memory
+const listDirents = async function* (fullDirPath) {
+    const dir = await fs.promises.opendir(fullDirPath);
+    for await (const dirent of dir) {
+        if (dirent.name[0] !== ".")
+            yield dirent;
+    }
+}
+
+// Listing entry of a directory entry, undefined for a broken link or an entry removed while listing. Row counts cost
+// opening a sidecar per file and are only looked up when asked for.
+const describe = async (fullDirPath, dirent, withRows) => {
+    const ref = path.join(fullDirPath, dirent.name);
+    let stat;
+    try {
+        stat = await fs.promises.stat(ref);
+    } catch (e) {
+        return undefined;
+    }
+    return {
+        "name" : dirent.name,
+        "dir" : stat.isDirectory(),
+        "ref" : ref,
+        "size" : stat.size,
+        "mtime" : Math.floor(stat.mtimeMs),
+        "rows" : withRows && !stat.isDirectory() ? await readRowCount(ref, stat) : undefined
+    };
+}
+
+// Lists "limit" entries after skipping "offset" of them, skipped entries are not even stat'ed. The next offset is sent
+// in X-Next-Offset when more entries follow. Without a limit the whole directory is streamed out as it is read, with
+// no validator. With "rows=true" the entries of indexed files carry their row count.
+// A page is validated by a hash of its entries, so a client holding the same page, sizes and mtimes included, gets
+// 304 instead of the body. The directory's own mtime would miss files that are appended to.
+const sendListing = async (req, res, fullDirPath) => {
+    const offset = Math.max(0, parseInt(req.query.offset, 10) || 0);
+    const limit = parseInt(req.query.limit, 10);
+    const withRows = req.query.rows === "true";
+    let index = 0;
+    if (!(limit > 0)) {
+        res.type("json");
+        res.write("[");
+        let written = 0;
+        for await (const dirent of listDirents(fullDirPath)) {
+            if (index++ < offset)
+                continue;
+            const entry = await describe(fullDirPath, dirent, withRows);
+            if (entry)
+                res.write((written++ > 0 ? "," : "") + JSON.stringify(entry));
+        }
+        return res.end("]");
+    }
+
+    const page = [];
+    let nextOffset = "";
+    for await (const dirent of listDirents(fullDirPath)) {
+        if (index++ < offset)
+            continue;
+        if (index > offset + limit) {
+            // one entry past the page proves there is a next one, returning closes the directory
+            nextOffset = String(offset + limit);
+            res.set("X-Next-Offset", nextOffset);
+            break;
+        }
+        const entry = await describe(fullDirPath, dirent, withRows);
+        if (entry)
+            page.push(entry);
+    }
+    const body = JSON.stringify(page);
+    res.set("ETag", `W/"${crypto.createHash("sha1").update(body).update(nextOffset).digest("hex")}"`);
+    if (req.fresh)
+        return res.status(304).end();
+    res.type("json").send(body);
+}
+
+const fsExplore = async (req,res) => {
     console.log("HIT > !")
     // Get path
     const dirPath  = req.path;
@@ -16,28 +180,17 @@ const fsExplore = (req,res) => {
     const fullDirPath =  path.join(ROOT_DIR, dirPath);
 
     // return content of file if not dir
-    if(!fs.statSync(fullDirPath).isDirectory())
-        return res.send(fs.readFileSync(fullDirPath, 'utf8'));
-
-    // Generate details for each file / dir in current dir
-    const resArr = [];
-    fs.readdirSync(fullDirPath).forEach(
-        file =>
-        {
-            if(file[0] != ".")
-                resArr.push({
-                            "name" : file,
-                            "dir" : fs.statSync(path.join(fullDirPath,file)).isDirectory(),
-                            "ref" : path.join(fullDirPath,file)
-                    })
-        }
-    );
+    const stat = await fs.promises.stat(fullDirPath);
+    if(!stat.isDirectory())
+        return sendFile(req, res, fullDirPath, stat);
+
+    res.set("Cache-Control", "no-cache");
 
-    // Send array
-    res.json(resArr);
+    // Send details of each file / dir in current dir
+    await sendListing(req, res, fullDirPath);
 }
 
-app.get("*",fsExplore);
+app.get("*", (req, res, next) => fsExplore(req, res).catch(next));
 app.listen(port, () => {
     console.log(`Dir app listening on port ${port}`)
 })
\ No newline at end of file
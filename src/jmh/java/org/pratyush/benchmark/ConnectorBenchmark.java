@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.benchmark;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.api.connector.SampleRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pratyush.connector.HTTPConnector;
+import org.pratyush.connector.HTTPConnectorConfig;
+import org.pratyush.connector.HttpGsonHandler;
+import org.pratyush.connector.HttpRangeReader;
+import org.pratyush.util.CsvSchemaInferrer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connector sampling and remote schema inference against {@link LocalHttpServer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ConnectorBenchmark {
+    private static final int SAMPLE_LIMIT = 1000;
+
+    private LocalHttpServer server;
+    private HTTPConnector connector;
+    private HttpGsonHandler httpHandler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LocalHttpServer();
+        connector = new HTTPConnector(new HTTPConnectorConfig(server.getBaseUrl(), "/", false, null, null));
+        httpHandler = new HttpGsonHandler((String) null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public List<StructuredRecord> sample(CsvFile file, Throughput throughput) throws IOException {
+        SampleRequest request = SampleRequest.builder(SAMPLE_LIMIT).setPath(file.path.toString()).build();
+        List<StructuredRecord> records = connector.sample(null, request);
+        throughput.records += records.size();
+        return records;
+    }
+
+    /**
+     * Only the operation rate is measured, the inferrer does not tell how many rows it actually sampled.
+     */
+    @Benchmark
+    public Schema inferRemoteSchema(CsvFile file) throws IOException {
+        try (HttpRangeReader reader = new HttpRangeReader(httpHandler,
+                httpHandler.cleanUrl(server.getBaseUrl() + file.path))) {
+            return new CsvSchemaInferrer(",", CsvSchemaInferrer.DEFAULT_SAMPLE_SIZE,
+                    CsvSchemaInferrer.DEFAULT_PARALLELISM).infer(reader, 0);
+        }
+    }
+}
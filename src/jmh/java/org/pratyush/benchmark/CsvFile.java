@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * A synthetic CSV file shared by all benchmarks. Files are generated once per shape, quoting and size into
+ * {@code target/benchmark-data} (or the {@code benchmark.data.dir} system property) and reused by later runs.
+ * <p>
+ * Columns cycle through int, double, date, boolean and string values so that type inference and conversion parse every
+ * type. Quoted files quote every string value and put delimiters, escaped quotes and, every 50th row, a line break
+ * inside it.
+ */
+@State(Scope.Benchmark)
+public class CsvFile {
+    private static final int NARROW_COLUMNS = 8;
+    private static final int WIDE_COLUMNS = 128;
+
+    @Param({"narrow", "wide"})
+    public String shape;
+
+    @Param({"plain", "quoted"})
+    public String quoting;
+
+    @Param({"1MB", "64MB", "1GB"})
+    public String size;
+
+    public Path path;
+    public long length;
+    public String headerLine;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        Path dir = Paths.get(System.getProperty("benchmark.data.dir", "target/benchmark-data"));
+        Files.createDirectories(dir);
+        path = dir.resolve(shape + "-" + quoting + "-" + size + ".csv").toAbsolutePath();
+        int columns = "wide".equals(shape) ? WIDE_COLUMNS : NARROW_COLUMNS;
+        if (!Files.exists(path)) {
+            // written under a temporary name, so an interrupted run never leaves a truncated file behind
+            Path temp = Files.createTempFile(dir, "generating", ".csv");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1024 * 1024)) {
+                write(out, columns, "quoted".equals(quoting), parseSize(size));
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+        length = Files.size(path);
+        headerLine = header(columns);
+    }
+
+    static long parseSize(String size) {
+        String upper = size.toUpperCase();
+        if (upper.endsWith("GB"))
+            return Long.parseLong(upper.substring(0, upper.length() - 2)) << 30;
+        if (upper.endsWith("MB"))
+            return Long.parseLong(upper.substring(0, upper.length() - 2)) << 20;
+        if (upper.endsWith("KB"))
+            return Long.parseLong(upper.substring(0, upper.length() - 2)) << 10;
+        return Long.parseLong(upper);
+    }
+
+    private static String header(int columns) {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < columns; i++) {
+            header.append(i == 0 ? "" : ",").append("c").append(i);
+        }
+        return header.toString();
+    }
+
+    private static void write(OutputStream out, int columns, boolean quoted, long targetSize) throws IOException {
+        Random random = new Random(42);
+        byte[] header = (header(columns) + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(header);
+        long written = header.length;
+        StringBuilder row = new StringBuilder();
+        for (long rowIdx = 0; written < targetSize; rowIdx++) {
+            row.setLength(0);
+            for (int i = 0; i < columns; i++) {
+                if (i > 0)
+                    row.append(',');
+                appendValue(row, i % 5, random, quoted, rowIdx % 50 == 0);
+            }
+            row.append('\n');
+            byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes);
+            written += bytes.length;
+        }
+    }
+
+    private static void appendValue(StringBuilder row, int type, Random random, boolean quoted, boolean lineBreak) {
+        switch (type) {
+            case 0:
+                row.append(random.nextInt(1_000_000));
+                break;
+            case 1:
+                row.append(random.nextInt(100_000)).append('.').append(random.nextInt(100));
+                break;
+            case 2:
+                row.append(String.format("20%02d-%02d-%02d", random.nextInt(30), 1 + random.nextInt(12),
+                        1 + random.nextInt(28)));
+                break;
+            case 3:
+                row.append(random.nextBoolean());
+                break;
+            default:
+                String word = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+                if (!quoted) {
+                    row.append(word);
+                } else {
+                    row.append('"').append(word).append(", \"\"").append(word, 0, 3).append("\"\"");
+                    if (lineBreak)
+                        row.append('\n').append(word, 3, 6);
+                    row.append('"');
+                }
+                break;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the node file server, so connector benchmarks do not depend on node or on the network. Serves local
+ * files by absolute path with HEAD and single {@code bytes=start-end} range support, the way the node server does.
+ */
+public class LocalHttpServer implements Closeable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
+    private final HttpServer server;
+
+    public LocalHttpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Path file = Paths.get(exchange.getRequestURI().getPath());
+            if (!Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            long size = Files.size(file);
+            long start = 0;
+            long end = size - 1;
+            int status = 200;
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher != null && matcher.matches()) {
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty())
+                    end = Math.min(end, Long.parseLong(matcher.group(2)));
+                if (start >= size || start > end) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                    exchange.sendResponseHeaders(RANGE_NOT_SATISFIABLE, -1);
+                    return;
+                }
+                status = PARTIAL_CONTENT;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+            long length = end - start + 1;
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, length);
+            try (InputStream in = Files.newInputStream(file); OutputStream out = exchange.getResponseBody()) {
+                copy(in, out, start, length);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, long start, long length) throws IOException {
+        long skipped = 0;
+        while (skipped < start) {
+            skipped += in.skip(start - skipped);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = length;
+        int read;
+        while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+            // the client may stop reading early and cancel the call
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
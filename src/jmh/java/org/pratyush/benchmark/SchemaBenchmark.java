@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.benchmark;
+
+import io.cdap.cdap.api.data.schema.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pratyush.util.CsvHelper;
+import org.pratyush.util.CsvSchemaInferrer;
+import org.pratyush.util.MappedRangeReader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schema detection of a local file: sampled type inference and the string schema built from the header line.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class SchemaBenchmark {
+
+    /**
+     * Only the operation rate is measured, the inferrer does not tell how many rows it actually sampled.
+     */
+    @Benchmark
+    public Schema inferSchema(CsvFile file) throws IOException {
+        try (MappedRangeReader reader = new MappedRangeReader(file.path.toString())) {
+            return new CsvSchemaInferrer(",", CsvSchemaInferrer.DEFAULT_SAMPLE_SIZE,
+                    CsvSchemaInferrer.DEFAULT_PARALLELISM).infer(reader, 0);
+        }
+    }
+
+    @Benchmark
+    public Schema generateSchemaFromCsv(CsvFile file, Throughput throughput) {
+        throughput.records++;
+        throughput.bytes += file.headerLine.length();
+        return new CsvHelper().generateSchemaFromCsv(file.headerLine, ",");
+    }
+}
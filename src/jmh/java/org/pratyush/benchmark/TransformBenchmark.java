@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.benchmark;
+
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pratyush.format.CsvInputFormat;
+import org.pratyush.format.CsvRecordReader;
+import org.pratyush.plugin.CsvRecordConverter;
+import org.pratyush.util.CsvSchemaInferrer;
+import org.pratyush.util.CsvTokenizer;
+import org.pratyush.util.MappedRangeReader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a whole file per operation through {@link CsvRecordReader}, the way a split is read by the source, and
+ * optionally tokenizes or converts every record like {@code LocalFileBatchSource.transform} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TransformBenchmark {
+    private Schema schema;
+    private TaskAttemptContext context;
+
+    @Setup(Level.Trial)
+    public void setUp(CsvFile file) throws IOException {
+        try (MappedRangeReader reader = new MappedRangeReader(file.path.toString())) {
+            schema = new CsvSchemaInferrer(",", CsvSchemaInferrer.DEFAULT_SAMPLE_SIZE,
+                    CsvSchemaInferrer.DEFAULT_PARALLELISM).infer(reader, 0);
+        }
+        Configuration conf = new Configuration();
+        conf.set(CsvInputFormat.DELIMITER, ",");
+        conf.setBoolean(CsvInputFormat.QUOTE_AWARE, true);
+        conf.setInt(CsvInputFormat.SKIP_LEADING_LINES, 1);
+        context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    }
+
+    @Benchmark
+    public void readRecords(CsvFile file, Throughput throughput, Blackhole blackhole) throws IOException {
+        try (CsvRecordReader reader = open(file)) {
+            while (reader.nextKeyValue()) {
+                blackhole.consume(reader.getCurrentValue());
+                throughput.records++;
+            }
+        }
+        throughput.bytes += file.length;
+    }
+
+    @Benchmark
+    public void tokenizeRecords(CsvFile file, Throughput throughput, Blackhole blackhole) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(",");
+        try (CsvRecordReader reader = open(file)) {
+            while (reader.nextKeyValue()) {
+                Text value = reader.getCurrentValue();
+                blackhole.consume(tokenizer.tokenize(value.getBytes(), value.getLength()));
+                throughput.records++;
+            }
+        }
+        throughput.bytes += file.length;
+    }
+
+    @Benchmark
+    public void convertRecords(CsvFile file, Throughput throughput, Blackhole blackhole) throws IOException {
+        CsvRecordConverter converter = new CsvRecordConverter(schema, ",", null, null, 0);
+        try (CsvRecordReader reader = open(file)) {
+            while (reader.nextKeyValue()) {
+                Text value = reader.getCurrentValue();
+                blackhole.consume(converter.convert(value.getBytes(), value.getLength()));
+                throughput.records++;
+            }
+        }
+        throughput.bytes += file.length;
+    }
+
+    private CsvRecordReader open(CsvFile file) throws IOException {
+        CsvRecordReader reader = new CsvRecordReader();
+        reader.initialize(new FileSplit(new Path(file.path.toUri()), 0, file.length, new String[0]), context);
+        return reader;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.connector;
+
+import io.cdap.cdap.etl.api.connector.BrowseDetail;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of directory listings, shared by all connector instances of the JVM.
+ * <p>
+ * An entry younger than the TTL is served as is. An older entry is kept with the ETag and Last-Modified of its
+ * response, so it can be revalidated with a conditional request that the server answers with 304 if the listing did
+ * not change, sizes and modification times of its entries included.
+ */
+public class BrowseCache {
+    private final Map<String, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public BrowseCache(int capacity) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Nullable
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordRevalidation() {
+        revalidations.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Listings served without any request.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Listings served after the server confirmed with 304 that they are unchanged.
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * Listings fetched in full.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * A cached listing with the validators of the response it came from.
+     */
+    public static class Entry {
+        private final BrowseDetail detail;
+        @Nullable
+        private final String etag;
+        @Nullable
+        private final String lastModified;
+        private final long validatedAt;
+
+        public Entry(BrowseDetail detail, @Nullable String etag, @Nullable String lastModified, long validatedAt) {
+            this.detail = detail;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.validatedAt = validatedAt;
+        }
+
+        public BrowseDetail getDetail() {
+            return detail;
+        }
+
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        @Nullable
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isFresh(long now, long ttlMillis) {
+            return now - validatedAt < ttlMillis;
+        }
+
+        /**
+         * Returns the same listing, validated again at {@code now}.
+         */
+        public Entry revalidated(long now) {
+            return new Entry(detail, etag, lastModified, now);
+        }
+    }
+}
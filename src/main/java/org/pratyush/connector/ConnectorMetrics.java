@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.connector;
+
+import org.pratyush.util.LatencyHistogram;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per operation counters of the connector (browse, sample, generateSpec): calls, failures, total time, a latency
+ * histogram and the bytes received by the HTTP calls the operation made.
+ */
+public class ConnectorMetrics {
+    public static final String BROWSE = "browse";
+    public static final String SAMPLE = "sample";
+    public static final String GENERATE_SPEC = "generateSpec";
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+
+    public Operation get(String operation) {
+        return operations.computeIfAbsent(operation, name -> new Operation());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        operations.forEach((name, operation) -> builder.append(builder.length() == 0 ? "" : "; ")
+                .append(name).append(": ").append(operation));
+        return builder.toString();
+    }
+
+    /**
+     * Counters of a single operation.
+     */
+    public static class Operation {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        public void record(long elapsedNanos, long responseBytes, boolean failed) {
+            calls.increment();
+            if (failed)
+                failures.increment();
+            nanos.add(elapsedNanos);
+            bytes.add(responseBytes);
+            latency.record(elapsedNanos / 1_000_000);
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getTimeMillis() {
+            return nanos.sum() / 1_000_000;
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + getCalls() + ", failed=" + getFailures() + ", timeMs=" + getTimeMillis()
+                    + ", bytes=" + getBytes();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.connector;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSource;
+import org.pratyush.util.LocalRangeReader;
+import org.pratyush.util.RangeReader;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Content addressed disk cache of files downloaded from the HTTP file server, one per directory for the whole JVM.
+ * <p>
+ * A file is stored under the SHA-256 of its URL, ETag, length and Last-Modified, which a HEAD request fetches first.
+ * A changed file has a new key, so stale content is never served and old copies simply age out. Cached files are read
+ * with positional {@link FileChannel} reads, downloads are written with {@link FileChannel#transferFrom} into a
+ * temporary file that is renamed into place, so concurrent connectors, also in other JVMs, never see partial files.
+ * <p>
+ * The cache is bounded by size and evicts the least recently used files. Recency is the modification time of the
+ * cached file, touched on every hit, so it survives restarts. Files larger than a quarter of the cache are not cached,
+ * they are read with range requests instead.
+ */
+public class FileCache {
+    private static final ConcurrentMap<Path, FileCache> caches = new ConcurrentHashMap<>();
+    private static final String TEMP_SUFFIX = ".tmp";
+    // downloads keep touching their temporary file, one untouched for this long belongs to a dead process
+    static final long STALE_TEMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Path directory;
+    private final long maxBytes;
+    // cached file names to sizes, in access order, guarded by this
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    // downloads in progress by key, completed once the file is in the cache
+    private final ConcurrentMap<String, CompletableFuture<Void>> downloads = new ConcurrentHashMap<>();
+    private long totalBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypasses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bytesDownloaded = new LongAdder();
+
+    private FileCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        load();
+    }
+
+    /**
+     * Returns the cache of {@code directory}, created on first use. The size bound of the first caller applies.
+     */
+    public static FileCache forDirectory(String directory, long maxBytes) throws IOException {
+        Path path = Paths.get(directory).toAbsolutePath().normalize();
+        FileCache cache = caches.get(path);
+        if (cache != null)
+            return cache;
+        synchronized (caches) {
+            cache = caches.get(path);
+            if (cache == null) {
+                cache = new FileCache(path, maxBytes);
+                caches.put(path, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Picks up files cached by earlier runs, oldest first, and removes stale temporary files of downloads that never
+     * finished. Recent temporary files may be downloads still running in another JVM sharing the directory, so they
+     * are left alone.
+     */
+    private synchronized void load() throws IOException {
+        List<Path> cached = new ArrayList<>();
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (!file.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    cached.add(file);
+                else if (getModifiedTime(file).toMillis() < staleBefore)
+                    Files.deleteIfExists(file);
+            }
+        }
+        cached.sort((a, b) -> getModifiedTime(a).compareTo(getModifiedTime(b)));
+        for (Path file : cached) {
+            long size = Files.size(file);
+            files.put(file.getFileName().toString(), size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+    private static FileTime getModifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Opens the file at {@code url}, from the cache if its current version is cached, otherwise downloading it into
+     * the cache first.
+     */
+    public RangeReader open(HttpGsonHandler httpHandler, String url) throws IOException {
+        Request head = httpHandler.generateRequest(url).newBuilder().head().build();
+        long length;
+        String key;
+        try (Response response = httpHandler.generateResponse(head)) {
+            if (!response.isSuccessful())
+                throw new IOException("Request for " + url + " failed with status " + response.code() + ".");
+            String contentLength = response.header("Content-Length");
+            length = contentLength == null ? -1 : Long.parseLong(contentLength);
+            key = getKey(url, response.header("ETag"), length, response.header("Last-Modified"));
+        }
+        if (length < 0 || length > maxBytes / 4) {
+            bypasses.increment();
+            return new HttpRangeReader(httpHandler, url);
+        }
+
+        RangeReader cached = openCached(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        // one download per file, callers arriving meanwhile join it and then read the cached copy
+        CompletableFuture<Void> download = new CompletableFuture<>();
+        CompletableFuture<Void> running = downloads.putIfAbsent(key, download);
+        if (running != null) {
+            await(running, url);
+        } else {
+            try {
+                // a download that finished since the first look has already been removed
+                cached = openCached(key);
+                if (cached != null) {
+                    hits.increment();
+                    download.complete(null);
+                    return cached;
+                }
+                misses.increment();
+                download(httpHandler, url, key);
+                download.complete(null);
+            } catch (IOException | RuntimeException e) {
+                download.completeExceptionally(e);
+                throw e;
+            } finally {
+                downloads.remove(key, download);
+            }
+        }
+        RangeReader downloaded = openCached(key);
+        if (downloaded == null)
+            throw new IOException("Cached copy of " + url + " was evicted before it could be read.");
+        return downloaded;
+    }
+
+    private static void await(CompletableFuture<Void> download, String url) throws IOException {
+        try {
+            download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the download of " + url + ".");
+        } catch (ExecutionException e) {
+            throw new IOException("Download of " + url + " failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Nullable
+    private RangeReader openCached(String key) throws IOException {
+        Path file = directory.resolve(key);
+        synchronized (this) {
+            if (!files.containsKey(key) && Files.exists(file)) {
+                // cached by another JVM sharing the directory
+                long size = Files.size(file);
+                files.put(key, size);
+                totalBytes += size;
+            }
+            if (files.get(key) == null)
+                return null;
+        }
+        try {
+            // an open file stays readable when it is evicted
+            LocalRangeReader reader = new LocalRangeReader(file.toString());
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return reader;
+        } catch (NoSuchFileException e) {
+            forget(key);
+            return null;
+        }
+    }
+
+    private void download(HttpGsonHandler httpHandler, String url, String key) throws IOException {
+        Path temp = directory.resolve(key + "-" + UUID.randomUUID() + TEMP_SUFFIX);
+        long size = 0;
+        try {
+            try (Response response = httpHandler.generateResponse(httpHandler.generateRequest(url));
+                 FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                         StandardOpenOption.WRITE)) {
+                if (!response.isSuccessful())
+                    throw new IOException("Request for " + url + " failed with status " + response.code() + ".");
+                BufferedSource source = response.body().source();
+                long transferred;
+                while ((transferred = channel.transferFrom(source, size, Long.MAX_VALUE - size)) > 0) {
+                    size += transferred;
+                }
+            }
+            try {
+                Files.move(temp, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // another JVM finished the same download first
+                size = Files.size(directory.resolve(key));
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        bytesDownloaded.add(size);
+        synchronized (this) {
+            Long previous = files.put(key, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            evict();
+        }
+    }
+
+    /**
+     * Deletes least recently used files until the cache fits its size bound. Must be called holding the lock.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            evictions.increment();
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                // left on disk, picked up again by the next load
+            }
+        }
+    }
+
+    private synchronized void forget(String key) {
+        Long size = files.remove(key);
+        if (size != null)
+            totalBytes -= size;
+    }
+
+    private static String getKey(String url, @Nullable String etag, long length, @Nullable String lastModified) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String identity = url + "\n" + etag + "\n" + length + "\n" + lastModified;
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest(identity.getBytes(StandardCharsets.UTF_8))) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Files read from the cache without a download.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Files downloaded into the cache.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Files too large to cache, read with range requests.
+     */
+    public long getBypasses() {
+        return bypasses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded.sum();
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses() + ", bypasses=" + getBypasses() + ", evictions="
+                + getEvictions() + ", size=" + getSizeBytes() + "/" + maxBytes;
+    }
+}
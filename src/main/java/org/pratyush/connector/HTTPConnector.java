@@ -15,8 +15,8 @@
  */
 package org.pratyush.connector;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
 import io.cdap.cdap.api.annotation.Description;
 import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.api.annotation.Plugin;
@@ -27,16 +27,29 @@ import io.cdap.cdap.etl.api.connector.*;
 import io.cdap.cdap.etl.api.validation.ValidationException;
 import okhttp3.Request;
 import okhttp3.Response;
+import org.apache.hadoop.io.Text;
+import org.pratyush.format.CodecDetector;
+import org.pratyush.format.CsvLineReader;
+import org.pratyush.format.RowIndex;
+import org.pratyush.plugin.CsvRecordConverter;
 import org.pratyush.plugin.LocalFileBatchSource;
 import org.pratyush.plugin.LocalFilePluginConfig;
 import org.pratyush.connector.entities.LocalFileEntity;
 import org.pratyush.util.CsvHelper;
+import org.pratyush.util.CsvSchemaInferrer;
+import org.pratyush.util.RangeInputStream;
+import org.pratyush.util.RangeReader;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 @Plugin(type = Connector.PLUGIN_TYPE)
 @Name(HTTPConnector.NAME)
@@ -50,6 +63,21 @@ public class HTTPConnector implements DirectConnector {
     private final HTTPConnectorConfig connectorConfig;
     public static final String PATH_SEPARATOR = "/";
     private static final int MAX_SAMPLE_LIMIT = 1000;
+    private static final int BROWSE_CACHE_CAPACITY = 256;
+    private static final int NOT_MODIFIED = 304;
+    private static final String LIMIT_PARAM = "limit";
+    private static final String OFFSET_PARAM = "offset";
+    private static final String ROWS_PARAM = "rows";
+    private static final String NEXT_OFFSET_HEADER = "X-Next-Offset";
+    private static final String SIZE_PROPERTY = "Size";
+    private static final String LAST_MODIFIED_PROPERTY = "Last Modified";
+    private static final String ROWS_PROPERTY = "Rows";
+    // sample request property, number of the first line to sample
+    public static final String SAMPLE_ROW_OFFSET = "rowOffset";
+    // browse request property, number of directory entries to skip, e.g. the X-Next-Offset of the previous page
+    public static final String BROWSE_OFFSET = "offset";
+    private static final BrowseCache browseCache = new BrowseCache(BROWSE_CACHE_CAPACITY);
+    private static final ConnectorMetrics connectorMetrics = new ConnectorMetrics();
 
     private CsvHelper csvHelper;
 
@@ -75,8 +103,7 @@ public class HTTPConnector implements DirectConnector {
         if (!collector.getValidationFailures().isEmpty())
             return; //if errors found stop execution
         Request request = okHttpHandler.generateRequest(okHttpHandler.cleanUrl(baseUrl + connectorConfig.getEndPoint()));
-        try {
-            Response response = okHttpHandler.generateResponse(request);
+        try (Response response = okHttpHandler.generateResponse(request)) {
             if (!response.isSuccessful())
                 collector.addFailure("Request Failed", "Check BaseUrl, Endpoint" + (connectorConfig.isAuthReqd() ? " and Auth" : ""));
 
@@ -86,80 +113,306 @@ public class HTTPConnector implements DirectConnector {
     }
 
 
+    /**
+     * Lists a directory, at most {@link BrowseRequest#getLimit()} entries of it starting at the {@link #BROWSE_OFFSET}
+     * request property. Limit and offset are sent to the server as page, so only that page of a huge directory is
+     * read, and the response is parsed entry by entry. The total count is only set once the last page is listed.
+     */
     public BrowseDetail browse(ConnectorContext connectorContext, BrowseRequest browseRequest) throws IOException {
+        return timed(ConnectorMetrics.BROWSE, httpHandler -> browse(browseRequest, httpHandler));
+    }
+
+    private BrowseDetail browse(BrowseRequest browseRequest, HttpGsonHandler httpHandler) throws IOException {
         String path = browseRequest.getPath();
         path = path.equals(PATH_SEPARATOR) ? path + endPoint : path; //redirect "/" to endPoint, note: default endPoint is /
-        Request request = okHttpHandler.generateRequest(okHttpHandler.cleanUrl(baseUrl + PATH_SEPARATOR + path));
-        Response response = okHttpHandler.generateResponse(request);
-        String responseString = response.body().string();
-        Gson gson = okHttpHandler.getGsonObj();
+        String url = okHttpHandler.cleanUrl(baseUrl + PATH_SEPARATOR + path);
+        Integer limit = browseRequest.getLimit();
+        String offsetProperty = browseRequest.getProperties().get(BROWSE_OFFSET);
+        long offset = offsetProperty == null ? 0 : Long.parseLong(offsetProperty);
+        // row counts cost the server a sidecar read per file, they are only asked for on a bounded page
+        if (limit != null && limit > 0)
+            url += "?" + LIMIT_PARAM + "=" + limit + (offset > 0 ? "&" + OFFSET_PARAM + "=" + offset : "") + "&"
+                    + ROWS_PARAM + "=true";
+        String cacheKey = connectorConfig.getAuthorization() + " " + url;
+        long ttlMillis = connectorConfig.getBrowseCacheTtlSeconds() * 1000;
+        long now = System.currentTimeMillis();
+        BrowseCache.Entry cached = ttlMillis > 0 ? browseCache.get(cacheKey) : null;
+        if (cached != null && cached.isFresh(now, ttlMillis)) {
+            browseCache.recordHit();
+            return cached.getDetail();
+        }
 
-        List<LocalFileEntity> fileEntities = gson.fromJson(responseString, new TypeToken<List<LocalFileEntity>>() {
-        }.getType());
+        Request.Builder requestBuilder = httpHandler.generateRequest(url).newBuilder();
+        if (cached != null && cached.getEtag() != null)
+            requestBuilder.header("If-None-Match", cached.getEtag());
+        if (cached != null && cached.getLastModified() != null)
+            requestBuilder.header("If-Modified-Since", cached.getLastModified());
+        BrowseDetail detail;
+        String etag;
+        String lastModified;
+        try (Response response = httpHandler.generateResponse(requestBuilder.build())) {
+            if (response.code() == NOT_MODIFIED && cached != null) {
+                browseCache.recordRevalidation();
+                browseCache.put(cacheKey, cached.revalidated(now));
+                return cached.getDetail();
+            }
+            if (!response.isSuccessful())
+                throw new IOException("Listing " + path + " failed with status " + response.code());
+            etag = response.header("ETag");
+            lastModified = response.header("Last-Modified");
+            // servers without pagination send the whole listing, reading stops at the limit
+            int maxEntries = limit != null && limit > 0 ? limit : Integer.MAX_VALUE;
+            boolean morePages = response.header(NEXT_OFFSET_HEADER) != null;
+            try (JsonReader reader = new JsonReader(response.body().charStream())) {
+                detail = readListing(reader, path, maxEntries, offset, morePages);
+            }
+        }
+        browseCache.recordMiss();
+        if (ttlMillis > 0)
+            browseCache.put(cacheKey, new BrowseCache.Entry(detail, etag, lastModified, now));
+        return detail;
+    }
+
+    private BrowseDetail readListing(JsonReader reader, String path, int maxEntries, long offset, boolean morePages)
+            throws IOException {
+        TypeAdapter<LocalFileEntity> adapter = okHttpHandler.getGsonObj().getAdapter(LocalFileEntity.class);
+        String separator = path.endsWith(PATH_SEPARATOR) ? "" : PATH_SEPARATOR;
         BrowseDetail.Builder builder = BrowseDetail.builder();
-        for (LocalFileEntity fileEntity : fileEntities) {
-            String separator = path.endsWith(PATH_SEPARATOR) ? "" : PATH_SEPARATOR;
+        int count = 0;
+        reader.beginArray();
+        while (count < maxEntries && reader.hasNext()) {
+            LocalFileEntity fileEntity = adapter.read(reader);
             String entityPath = path + separator + fileEntity.getName();
             String entityType = fileEntity.isDir() ? "directory" : "file";
             BrowseEntity.Builder entity = BrowseEntity.builder(fileEntity.getName(), entityPath, entityType)
                     .canBrowse(fileEntity.isDir())
                     .canSample(!fileEntity.isDir());
+            if (fileEntity.getSize() != null && !fileEntity.isDir())
+                entity.addProperty(SIZE_PROPERTY, BrowseEntityPropertyValue.builder(
+                        String.valueOf(fileEntity.getSize()), BrowseEntityPropertyValue.PropertyType.SIZE_BYTES).build());
+            if (fileEntity.getMtime() != null)
+                entity.addProperty(LAST_MODIFIED_PROPERTY, BrowseEntityPropertyValue.builder(
+                        String.valueOf(fileEntity.getMtime()),
+                        BrowseEntityPropertyValue.PropertyType.TIMESTAMP_MILLIS).build());
+            // counted by the server from the row index of the file, without reading the file
+            if (fileEntity.getRows() != null)
+                entity.addProperty(ROWS_PROPERTY, BrowseEntityPropertyValue.builder(
+                        String.valueOf(fileEntity.getRows()), BrowseEntityPropertyValue.PropertyType.NUMBER).build());
             builder.addEntity(entity.build());
+            count++;
         }
+        // the size of the directory is only known on its last page
+        if (!morePages && !reader.hasNext())
+            builder.setTotalCount((int) (offset + count));
+        return builder.build();
+    }
 
-        return builder.setTotalCount(fileEntities.size()).build();
+    /**
+     * Runs a connector operation with a handler that counts the bytes received, and records its time, bytes and
+     * outcome in {@link #getConnectorMetrics()}.
+     */
+    private <T, E extends Exception> T timed(String operation, Operation<T, E> body) throws E {
+        LongAdder bytes = new LongAdder();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = body.run(okHttpHandler.withByteCounter(bytes));
+            failed = false;
+            return result;
+        } finally {
+            connectorMetrics.get(operation).record(System.nanoTime() - start, bytes.sum(), failed);
+        }
+    }
+
+    private interface Operation<T, E extends Exception> {
+        T run(HttpGsonHandler httpHandler) throws E;
+    }
+
+    /**
+     * Time, bytes and failures of the browse, sample and generateSpec calls of all connectors.
+     */
+    public static ConnectorMetrics getConnectorMetrics() {
+        return connectorMetrics;
+    }
+
+    /**
+     * Hit, revalidation and miss counters of the listings cache shared by all connectors.
+     */
+    public static BrowseCache getBrowseCache() {
+        return browseCache;
     }
 
     @Override
     public ConnectorSpec generateSpec(ConnectorContext connectorContext, ConnectorSpecRequest connectorSpecRequest) {
+        return timed(ConnectorMetrics.GENERATE_SPEC, httpHandler -> generateSpec(connectorContext, connectorSpecRequest,
+                httpHandler));
+    }
+
+    private ConnectorSpec generateSpec(ConnectorContext connectorContext, ConnectorSpecRequest connectorSpecRequest,
+                                       HttpGsonHandler httpHandler) {
         String localPath = connectorSpecRequest.getPath();
         Map<String, String> pluginProps = new HashMap<>();
         pluginProps.put(LocalFilePluginConfig.NAME_REFERENCE_NAME, localPath.substring(localPath.lastIndexOf(PATH_SEPARATOR) + 1));
-        pluginProps.put(LocalFilePluginConfig.NAME_FILE_PATH, okHttpHandler.cleanUrl(localPath));
+        if (connectorConfig.isRemoteRead()) {
+            // executors stream the file from the server instead of expecting it on their local file system
+            pluginProps.put(LocalFilePluginConfig.NAME_FILE_PATH, okHttpHandler.cleanUrl(baseUrl + localPath));
+            // the api key itself is never copied into the pipeline, only a reference to the secure store
+            if (connectorConfig.getAuthorizationMacro() != null)
+                pluginProps.put(LocalFilePluginConfig.NAME_AUTHORIZATION, connectorConfig.getAuthorizationMacro());
+        } else {
+            pluginProps.put(LocalFilePluginConfig.NAME_FILE_PATH, okHttpHandler.cleanUrl(localPath));
+        }
         //TODO Add options windows (delimiter etc)
         PluginSpec pluginSpec = new PluginSpec(LocalFileBatchSource.NAME, LocalFileBatchSource.PLUGIN_TYPE, pluginProps);
-        Schema pluginSchema = generateSchemaForPlugin(localPath, connectorContext.getFailureCollector());
+        Schema pluginSchema = generateSchemaForPlugin(localPath, connectorContext.getFailureCollector(), httpHandler);
 
         return ConnectorSpec.builder().setSchema(pluginSchema).addRelatedPlugin(pluginSpec).build();
     }
 
-    private Schema generateSchemaForPlugin(String path, FailureCollector collector) {
-        Request request = okHttpHandler.generateRequest(baseUrl + path);
+    private Schema generateSchemaForPlugin(String path, FailureCollector collector, HttpGsonHandler httpHandler) {
         try {
-            Response response = okHttpHandler.generateResponse(request);
-            if (csvHelper.isCsvFile(path))
-                return csvHelper.generateSchemaFromCsv(response.body().string(), ",");
+            Schema schema = csvHelper.isCsvFile(path) ? inferCsvSchema(path, httpHandler) : null;
+            if (schema != null)
+                return schema;
         } catch (IOException e) {
             collector.addFailure(e.getMessage(), null);
         }
         return LocalFileBatchSource.DEFAULT_SCHEMA;
     }
 
+    /**
+     * Infers the typed schema of a CSV file, {@code null} if the file is empty.
+     */
+    @Nullable
+    private Schema inferCsvSchema(String path, HttpGsonHandler httpHandler) throws IOException {
+        if (CsvHelper.stripCompressionExtension(path).equals(path)) {
+            // rows are sampled from ranges spread over the whole file, not only its head
+            try (RangeReader reader = openFile(path, httpHandler)) {
+                return new CsvSchemaInferrer(",", MAX_SAMPLE_LIMIT, CsvSchemaInferrer.DEFAULT_PARALLELISM)
+                        .infer(reader, 0);
+            }
+        }
+        String[] lines = fetchLines(path, MAX_SAMPLE_LIMIT, 0, httpHandler);
+        if (lines.length == 0)
+            return null;
+        return new CsvSchemaInferrer(",", MAX_SAMPLE_LIMIT, 1).infer(Arrays.asList(lines));
+    }
+
     @Override
     public List<StructuredRecord> sample(ConnectorContext connectorContext, SampleRequest sampleRequest) throws
             IOException {
-        Request request = okHttpHandler.generateRequest(baseUrl + sampleRequest.getPath());
-        Response response = okHttpHandler.generateResponse(request);
-        String responseString = response.body().string();
-        String[] responseLines = responseString.split("\n");
-
-        int sampleLimit = Math.min(responseLines.length, MAX_SAMPLE_LIMIT);
-        if (csvHelper.isCsvFile(sampleRequest.getPath()))
-            return sampleCsv(responseLines, sampleLimit);
+        return timed(ConnectorMetrics.SAMPLE, httpHandler -> sample(sampleRequest, httpHandler));
+    }
+
+    private List<StructuredRecord> sample(SampleRequest sampleRequest, HttpGsonHandler httpHandler) throws IOException {
+        String rowOffset = sampleRequest.getProperties().get(SAMPLE_ROW_OFFSET);
+        long startRow = rowOffset == null ? 0 : Long.parseLong(rowOffset);
+        String[] responseLines = fetchLines(sampleRequest.getPath(), MAX_SAMPLE_LIMIT, startRow, httpHandler);
+        if (responseLines.length == 0)
+            return new ArrayList<>();
+
+        int sampleLimit = responseLines.length;
+        if (csvHelper.isCsvFile(sampleRequest.getPath())) {
+            // the fetched lines start with the header, the rows to show are the sample the types are inferred from
+            Schema schema = new CsvSchemaInferrer(",", MAX_SAMPLE_LIMIT, 1).infer(Arrays.asList(responseLines));
+            return sampleCsv(schema, responseLines, sampleLimit);
+        }
         else
             return sampleFile(responseLines, sampleLimit);
     }
 
-    private List<StructuredRecord> sampleCsv(String[] csvLines, int sampleLimit) {
-        Schema schema = csvHelper.generateSchemaFromCsv(csvLines[0], ",");
+    /**
+     * Reads {@code limit} lines of a file from line {@code startRow} on, with range requests that widen until enough
+     * lines are read, decompressing the file if needed. CSV records keep line breaks of quoted fields, and a CSV sample
+     * taken further into the file still starts with the header. The server side {@link RowIndex} of the file, if it is
+     * current, lets the read start close to {@code startRow} instead of skipping all lines before it.
+     */
+    private String[] fetchLines(String path, int limit, long startRow, HttpGsonHandler httpHandler)
+            throws IOException {
+        boolean csv = csvHelper.isCsvFile(path);
+        boolean compressed = !CsvHelper.stripCompressionExtension(path).equals(path);
+        List<String> lines = new ArrayList<>();
+        try (RangeReader reader = openFile(path, httpHandler)) {
+            long start = 0;
+            long skip = startRow;
+            if (startRow > 0) {
+                if (csv)
+                    readLines(reader, path, 0, 0, 1, lines);
+                RowIndex index = compressed ? null : fetchRowIndex(path, reader.length(), httpHandler);
+                if (index != null) {
+                    start = index.getOffset(startRow);
+                    skip = startRow - index.getIndexedRow(startRow);
+                }
+            }
+            readLines(reader, path, start, skip, limit, lines);
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    private void readLines(RangeReader reader, String path, long start, long skip, int limit, List<String> lines)
+            throws IOException {
+        try (InputStream in = CodecDetector.decompress(new RangeInputStream(reader, start), path)) {
+            CsvLineReader lineReader = new CsvLineReader(in, ",".getBytes(StandardCharsets.UTF_8),
+                    csvHelper.isCsvFile(path));
+            Text line = new Text();
+            for (long skipped = 0; skipped < skip; skipped++) {
+                if (lineReader.readRecord(line) == 0)
+                    return;
+            }
+            while (lines.size() < limit && lineReader.readRecord(line) > 0) {
+                lines.add(line.toString());
+            }
+        }
+    }
+
+    /**
+     * Fetches the row index sidecar the batch source keeps next to a file, {@code null} if there is none or it does not
+     * match the current size of the file. The modification time is not known over HTTP, only the size is compared.
+     */
+    @Nullable
+    private RowIndex fetchRowIndex(String path, long fileSize, HttpGsonHandler httpHandler) throws IOException {
+        int nameStart = path.lastIndexOf(PATH_SEPARATOR) + 1;
+        String sidecar = path.substring(0, nameStart) + RowIndex.getSidecarName(path.substring(nameStart));
+        try (Response response = httpHandler.generateResponse(
+                httpHandler.generateRequest(okHttpHandler.cleanUrl(baseUrl + sidecar)))) {
+            if (!response.isSuccessful())
+                return null;
+            RowIndex index = RowIndex.read(response.body().byteStream());
+            return index != null && index.matches(fileSize, -1, ",", csvHelper.isCsvFile(path)) ? index : null;
+        }
+    }
+
+    /**
+     * Opens a file of the server for positional reads, through the disk cache if one is configured.
+     */
+    private RangeReader openFile(String path, HttpGsonHandler httpHandler) throws IOException {
+        FileCache fileCache = getFileCache();
+        String url = baseUrl + path;
+        return fileCache == null ? new HttpRangeReader(httpHandler, url) : fileCache.open(httpHandler, url);
+    }
+
+    /**
+     * Disk cache of the files read by this connector, {@code null} if no cache directory is configured. Its hit and
+     * miss counters are shared with all connectors using the same directory.
+     */
+    @Nullable
+    public FileCache getFileCache() throws IOException {
+        String directory = connectorConfig.getCacheDirectory();
+        return directory == null ? null : FileCache.forDirectory(directory, connectorConfig.getCacheMaxSizeBytes());
+    }
+
+    /**
+     * Builds the sample records with the converter the source uses, so the sample holds the values a pipeline reads.
+     * Rows the source would treat as malformed are left out.
+     */
+    private List<StructuredRecord> sampleCsv(Schema schema, String[] csvLines, int sampleLimit) {
+        CsvRecordConverter converter = new CsvRecordConverter(schema, ",", null, null, schema.getFields().size());
         List<StructuredRecord> structuredRecordList = new ArrayList<>();
         for (int i = 1; i < sampleLimit; i++) {
-            String[] splitValues = csvLines[i].split(",");
-            StructuredRecord.Builder builder = StructuredRecord.builder(schema);
-            for (int j = 0; j < splitValues.length; j++) {
-                builder.set(schema.getFields().get(j).getName(), splitValues[j]);
-            }
-            structuredRecordList.add(builder.build());
+            byte[] line = csvLines[i].getBytes(StandardCharsets.UTF_8);
+            StructuredRecord record = converter.convert(line, line.length);
+            if (record != null)
+                structuredRecordList.add(record);
         }
         return structuredRecordList;
     }
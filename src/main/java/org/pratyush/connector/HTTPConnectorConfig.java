@@ -31,6 +31,24 @@ public class HTTPConnectorConfig extends PluginConfig {
     public static final String NAME_ENABLE_AUTH = "enableAuthorisation";
     public static final String NAME_API_KEY = "apiKey";
     public static final String NAME_AUTH_TYPE = "authType";
+    public static final String NAME_API_KEY_SECURE_NAME = "apiKeySecureName";
+    public static final String NAME_REMOTE_READ = "remoteRead";
+    public static final String NAME_MAX_IDLE_CONNECTIONS = "maxIdleConnections";
+    public static final String NAME_KEEP_ALIVE_SECONDS = "keepAliveSeconds";
+    public static final String NAME_CONNECT_TIMEOUT = "connectTimeoutSeconds";
+    public static final String NAME_READ_TIMEOUT = "readTimeoutSeconds";
+    public static final String NAME_HTTP2_PRIOR_KNOWLEDGE = "http2PriorKnowledge";
+    public static final String NAME_MAX_RETRIES = "maxRetries";
+    public static final String NAME_BROWSE_CACHE_TTL = "browseCacheTtlSeconds";
+    public static final String NAME_CACHE_DIRECTORY = "cacheDirectory";
+    public static final String NAME_CACHE_MAX_SIZE = "cacheMaxSizeMb";
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    public static final long DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    public static final long DEFAULT_READ_TIMEOUT_SECONDS = 30;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_BROWSE_CACHE_TTL_SECONDS = 30;
+    public static final long DEFAULT_CACHE_MAX_SIZE_MB = 1024;
 
     @Name(NAME_BASE_URL)
     @Description("Enter HTTP Base Url. Ex-https://example.com")
@@ -53,6 +71,65 @@ public class HTTPConnectorConfig extends PluginConfig {
     @Nullable
     private String authType;
 
+    @Name(NAME_API_KEY_SECURE_NAME)
+    @Description("Name of the secure key holding the api key. Sources generated to read over HTTP reference it with " +
+            "a ${secure()} macro, without it they are generated without authorization.")
+    @Nullable
+    private String apiKeySecureName;
+
+    @Name(NAME_REMOTE_READ)
+    @Description("Read files from the HTTP server in the pipeline instead of from the local file system of every " +
+            "executor.")
+    @Nullable
+    private Boolean remoteRead;
+
+    @Name(NAME_MAX_IDLE_CONNECTIONS)
+    @Description("Maximum number of idle connections kept in the pool. Defaults to 5.")
+    @Nullable
+    private Integer maxIdleConnections;
+
+    @Name(NAME_KEEP_ALIVE_SECONDS)
+    @Description("Seconds an idle pooled connection is kept alive. Defaults to 300.")
+    @Nullable
+    private Long keepAliveSeconds;
+
+    @Name(NAME_CONNECT_TIMEOUT)
+    @Description("Connect timeout in seconds. Defaults to 10.")
+    @Nullable
+    private Long connectTimeoutSeconds;
+
+    @Name(NAME_READ_TIMEOUT)
+    @Description("Read timeout in seconds. Defaults to 30.")
+    @Nullable
+    private Long readTimeoutSeconds;
+
+    @Name(NAME_HTTP2_PRIOR_KNOWLEDGE)
+    @Description("Talk HTTP/2 without TLS (h2c) to an http server that supports it. The bundled node server does not.")
+    @Nullable
+    private Boolean http2PriorKnowledge;
+
+    @Name(NAME_MAX_RETRIES)
+    @Description("Number of retries of failed GET requests, with exponential backoff. Defaults to 3.")
+    @Nullable
+    private Integer maxRetries;
+
+    @Name(NAME_BROWSE_CACHE_TTL)
+    @Description("Seconds a directory listing is served from cache before it is revalidated with the server. " +
+            "0 disables the cache. Defaults to 30.")
+    @Nullable
+    private Long browseCacheTtlSeconds;
+
+    @Name(NAME_CACHE_DIRECTORY)
+    @Description("Local directory where files read for sampling and schema generation are cached, so repeated " +
+            "calls on the same file do not download it again. Caching is disabled if not set.")
+    @Nullable
+    private String cacheDirectory;
+
+    @Name(NAME_CACHE_MAX_SIZE)
+    @Description("Maximum size of the file cache in MB, least recently used files are evicted. Defaults to 1024.")
+    @Nullable
+    private Long cacheMaxSizeMb;
+
     public HTTPConnectorConfig(String baseURL, String endPoint, Boolean enableAuthorisation, String apiKey, String authType) {
         this.baseURL = baseURL;
         this.endPoint = endPoint;
@@ -81,6 +158,66 @@ public class HTTPConnectorConfig extends PluginConfig {
         return authType;
     }
 
+    /**
+     * Value of the Authorization header, {@code null} if authorisation is disabled.
+     */
+    @Nullable
+    public String getAuthorization() {
+        return Boolean.TRUE.equals(enableAuthorisation) ? authType + " " + apiKey : null;
+    }
+
+    /**
+     * Authorization header for generated sources, with the api key as a {@code ${secure()}} macro, {@code null} if
+     * authorisation is disabled or no secure key is named.
+     */
+    @Nullable
+    public String getAuthorizationMacro() {
+        if (!Boolean.TRUE.equals(enableAuthorisation) || apiKeySecureName == null || apiKeySecureName.trim().isEmpty())
+            return null;
+        return authType + " ${secure(" + apiKeySecureName.trim() + ")}";
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections == null ? DEFAULT_MAX_IDLE_CONNECTIONS : maxIdleConnections;
+    }
+
+    public long getKeepAliveSeconds() {
+        return keepAliveSeconds == null ? DEFAULT_KEEP_ALIVE_SECONDS : keepAliveSeconds;
+    }
+
+    public long getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds == null ? DEFAULT_CONNECT_TIMEOUT_SECONDS : connectTimeoutSeconds;
+    }
+
+    public long getReadTimeoutSeconds() {
+        return readTimeoutSeconds == null ? DEFAULT_READ_TIMEOUT_SECONDS : readTimeoutSeconds;
+    }
+
+    public boolean useHttp2PriorKnowledge() {
+        return http2PriorKnowledge != null && http2PriorKnowledge;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries == null ? DEFAULT_MAX_RETRIES : maxRetries;
+    }
+
+    public long getBrowseCacheTtlSeconds() {
+        return browseCacheTtlSeconds == null ? DEFAULT_BROWSE_CACHE_TTL_SECONDS : browseCacheTtlSeconds;
+    }
+
+    @Nullable
+    public String getCacheDirectory() {
+        return cacheDirectory == null || cacheDirectory.trim().isEmpty() ? null : cacheDirectory.trim();
+    }
+
+    public long getCacheMaxSizeBytes() {
+        return (cacheMaxSizeMb == null ? DEFAULT_CACHE_MAX_SIZE_MB : cacheMaxSizeMb) * 1024 * 1024;
+    }
+
+    public boolean isRemoteRead() {
+        return remoteRead != null && remoteRead;
+    }
+
     public void validateConnectorParams(FailureCollector failureCollector) {
         if (baseURL == null || baseURL.isEmpty())
             failureCollector.addFailure("Base url is empty.", "Enter valid http url.");
@@ -88,10 +225,31 @@ public class HTTPConnectorConfig extends PluginConfig {
             failureCollector.addFailure("Endpoint is empty.", "Enter valid http endpoint or set default endpoint as '/'");
         if (isAuthReqd() && (apiKey == null || apiKey.isEmpty()))
             failureCollector.addFailure("Enter auth parameters", null);
+        if (getMaxIdleConnections() < 0)
+            failureCollector.addFailure("Max idle connections can not be negative.", null)
+                    .withConfigProperty(NAME_MAX_IDLE_CONNECTIONS);
+        if (getKeepAliveSeconds() <= 0)
+            failureCollector.addFailure("Keep alive must be greater than 0.", null)
+                    .withConfigProperty(NAME_KEEP_ALIVE_SECONDS);
+        if (getConnectTimeoutSeconds() < 0 || getReadTimeoutSeconds() < 0)
+            failureCollector.addFailure("Timeouts can not be negative.", "Use 0 for no timeout.");
+        if (getBrowseCacheTtlSeconds() < 0)
+            failureCollector.addFailure("Browse cache TTL can not be negative.", "Use 0 to disable the cache.")
+                    .withConfigProperty(NAME_BROWSE_CACHE_TTL);
+        if (cacheMaxSizeMb != null && cacheMaxSizeMb <= 0)
+            failureCollector.addFailure("Cache size must be greater than 0.", null)
+                    .withConfigProperty(NAME_CACHE_MAX_SIZE);
+        if (getMaxRetries() < 0)
+            failureCollector.addFailure("Max retries can not be negative.", null).withConfigProperty(NAME_MAX_RETRIES);
+        if (!failureCollector.getValidationFailures().isEmpty())
+            return;
         HttpGsonHandler httpGsonHandler = new HttpGsonHandler(this);
         try {
             if (!httpGsonHandler.isValidHttpString(baseURL))
                 failureCollector.addFailure("Base Url isn't HTTP type.", "Use HTTP Url only");
+            else if (useHttp2PriorKnowledge() && baseURL.toLowerCase().startsWith("https"))
+                failureCollector.addFailure("HTTP/2 without TLS only works with http urls.", null)
+                        .withConfigProperty(NAME_HTTP2_PRIOR_KNOWLEDGE);
         } catch (URISyntaxException e) {
             failureCollector.addFailure(e.getMessage(), null);
         }
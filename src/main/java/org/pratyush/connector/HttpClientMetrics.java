@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.connector;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the HTTP calls made by a client: calls, failures, total latency, response bytes and how many calls
+ * reused a pooled connection instead of opening a new one. Fed by the {@link EventListener} from
+ * {@link #listenerFactory()}, every call gets a listener of its own so the per call state needs no locking.
+ * Response bytes are also added to the {@link LongAdder} tag of the request, if it has one.
+ */
+public class HttpClientMetrics {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsReused = new LongAdder();
+
+    public EventListener.Factory listenerFactory() {
+        return call -> new CallListener();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailedCalls() {
+        return failedCalls.sum();
+    }
+
+    public long getLatencyMillis() {
+        return latencyNanos.sum() / 1_000_000;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    public long getConnectionsReused() {
+        return connectionsReused.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "calls=" + getCalls() + ", failed=" + getFailedCalls() + ", latencyMs=" + getLatencyMillis()
+                + ", bytes=" + getResponseBytes() + ", connectionsOpened=" + getConnectionsOpened()
+                + ", connectionsReused=" + getConnectionsReused();
+    }
+
+    private final class CallListener extends EventListener {
+        private long callStart;
+        private boolean connected;
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+            calls.increment();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connected = true;
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            // a connection acquired without connecting first came from the pool
+            if (connected)
+                connectionsOpened.increment();
+            else
+                connectionsReused.increment();
+            connected = false;
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            responseBytes.add(byteCount);
+            LongAdder requestBytes = call.request().tag(LongAdder.class);
+            if (requestBytes != null)
+                requestBytes.add(byteCount);
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            latencyNanos.add(System.nanoTime() - callStart);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            latencyNanos.add(System.nanoTime() - callStart);
+            failedCalls.increment();
+        }
+    }
+}
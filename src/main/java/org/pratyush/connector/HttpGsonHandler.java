@@ -17,42 +17,118 @@ package org.pratyush.connector;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class HttpGsonHandler {
-    private static final OkHttpClient okHttpClient;
+    // one client, and so one connection pool, per distinct client settings for the whole JVM
+    private static final ConcurrentMap<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+    private static final HttpClientMetrics metrics = new HttpClientMetrics();
     private static final Gson gson;
     private static final String AUTH_HEADER = "Authorization";
+    private static final long RETRY_BACKOFF_MILLIS = 200;
 
     static {
-        okHttpClient = new OkHttpClient();
         GsonBuilder gsonBuilder = new GsonBuilder();
         gsonBuilder.setPrettyPrinting();
         gson = gsonBuilder.create();
     }
 
-    private HTTPConnectorConfig connectorConfig;
+    private final OkHttpClient okHttpClient;
+    @Nullable
+    private final String authorization;
+    // receives the response bytes of every request generated by this handler
+    @Nullable
+    private final LongAdder byteCounter;
 
     public HttpGsonHandler(HTTPConnectorConfig connectorConfig) {
-        this.connectorConfig = connectorConfig;
+        this.authorization = connectorConfig.getAuthorization();
+        this.byteCounter = null;
+        this.okHttpClient = getClient(connectorConfig.getMaxIdleConnections(), connectorConfig.getKeepAliveSeconds(),
+                connectorConfig.getConnectTimeoutSeconds(), connectorConfig.getReadTimeoutSeconds(),
+                connectorConfig.useHttp2PriorKnowledge(), connectorConfig.getMaxRetries());
+    }
+
+    /**
+     * Creates a handler outside of the connector, e.g. in the batch source, sending {@code authorization} (if not
+     * null) as Authorization header. The client uses the default settings of {@link HTTPConnectorConfig}.
+     */
+    public HttpGsonHandler(@Nullable String authorization) {
+        this.authorization = authorization;
+        this.byteCounter = null;
+        this.okHttpClient = getClient(HTTPConnectorConfig.DEFAULT_MAX_IDLE_CONNECTIONS,
+                HTTPConnectorConfig.DEFAULT_KEEP_ALIVE_SECONDS, HTTPConnectorConfig.DEFAULT_CONNECT_TIMEOUT_SECONDS,
+                HTTPConnectorConfig.DEFAULT_READ_TIMEOUT_SECONDS, false, HTTPConnectorConfig.DEFAULT_MAX_RETRIES);
+    }
+
+    private HttpGsonHandler(OkHttpClient okHttpClient, @Nullable String authorization, LongAdder byteCounter) {
+        this.okHttpClient = okHttpClient;
+        this.authorization = authorization;
+        this.byteCounter = byteCounter;
+    }
+
+    /**
+     * Returns a handler on the same client whose requests add their response bytes to {@code byteCounter}, also
+     * when they are made from other threads.
+     */
+    public HttpGsonHandler withByteCounter(LongAdder byteCounter) {
+        return new HttpGsonHandler(okHttpClient, authorization, byteCounter);
+    }
+
+    private static OkHttpClient getClient(int maxIdleConnections, long keepAliveSeconds, long connectTimeoutSeconds,
+                                          long readTimeoutSeconds, boolean http2PriorKnowledge, int maxRetries) {
+        String key = maxIdleConnections + ":" + keepAliveSeconds + ":" + connectTimeoutSeconds + ":"
+                + readTimeoutSeconds + ":" + http2PriorKnowledge + ":" + maxRetries;
+        return clients.computeIfAbsent(key, k -> new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                // h2c needs a server that speaks HTTP/2 without TLS, otherwise ALPN picks HTTP/2 for https only
+                .protocols(http2PriorKnowledge ? Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE)
+                        : Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .addInterceptor(new RetryInterceptor(maxRetries, RETRY_BACKOFF_MILLIS))
+                .eventListenerFactory(metrics.listenerFactory())
+                .build());
+    }
+
+    /**
+     * Counters of all HTTP calls made by this JVM.
+     */
+    public static HttpClientMetrics getMetrics() {
+        return metrics;
     }
 
     public Gson getGsonObj() {
         return gson;
     }
 
+    /**
+     * Requests must not set Accept-Encoding themselves: the client then asks for gzip and inflates the response
+     * transparently. Range requests are never compressed, their offsets are offsets into the file.
+     */
     public Request generateRequest(String url) {
         Request.Builder requestBuilder = new Request.Builder()
                 .url(url);
-        if (connectorConfig.isAuthReqd()) {
-            requestBuilder.addHeader(AUTH_HEADER, connectorConfig.getAuthType() + " " + connectorConfig.getApiKey());
+        if (authorization != null) {
+            requestBuilder.addHeader(AUTH_HEADER, authorization);
         }
+        if (byteCounter != null)
+            requestBuilder.tag(LongAdder.class, byteCounter);
         return requestBuilder.build();
     }
 
@@ -60,6 +136,13 @@ public class HttpGsonHandler {
         return okHttpClient.newCall(request).execute();
     }
 
+    /**
+     * Creates a call that the caller executes, for responses that are only partially read and then cancelled.
+     */
+    public Call newCall(Request request) {
+        return okHttpClient.newCall(request);
+    }
+
     public String cleanUrl(String url) {
         String regex = "(?<!(http:|https:))" + HTTPConnector.PATH_SEPARATOR + "{2,}";
         return url.replaceAll(regex, HTTPConnector.PATH_SEPARATOR);
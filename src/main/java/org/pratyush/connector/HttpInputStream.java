@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.connector;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.hadoop.fs.Seekable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Streams a file from the HTTP file server starting at any offset, with a single open ended {@code Range} request.
+ * Reading from the start requests the whole file instead, which the client receives gzip compressed if the server
+ * supports it.
+ * <p>
+ * A read that fails part way, e.g. on a dropped connection, is resumed with a new request from the last byte
+ * received, up to {@link #MAX_RETRIES} times in a row with a growing backoff. Requests are retried by the
+ * {@link RetryInterceptor} of the client only, a request that still fails or returns an error status fails the read.
+ * Seeking closes the current response and the next read requests the file from the new position.
+ */
+public class HttpInputStream extends InputStream implements Seekable {
+    public static final int MAX_RETRIES = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 500;
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
+    private final HttpGsonHandler httpHandler;
+    private final String url;
+    private long position;
+    private Call call;
+    private Response response;
+    private InputStream in;
+    private boolean eof;
+
+    public HttpInputStream(HttpGsonHandler httpHandler, String url, long position) {
+        this.httpHandler = httpHandler;
+        this.url = url;
+        this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        for (int attempt = 0; ; attempt++) {
+            // failed requests are already retried by the RetryInterceptor of the client, only reads are resumed here
+            if (in == null && !eof)
+                open();
+            if (eof)
+                return -1;
+            try {
+                int read = in.read(buffer, offset, length);
+                if (read < 0) {
+                    eof = true;
+                    return -1;
+                }
+                position += read;
+                return read;
+            } catch (IOException e) {
+                closeResponse();
+                // a read timeout is resumed like a dropped connection
+                if (RetryInterceptor.isInterruption(e))
+                    throw e;
+                if (attempt >= MAX_RETRIES)
+                    throw new IOException("Failed to read " + url + " at offset " + position + " after "
+                            + MAX_RETRIES + " retries: " + e.getMessage(), e);
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        Request.Builder requestBuilder = httpHandler.generateRequest(url).newBuilder();
+        // the whole file is requested without a range, so the server can send it gzipped
+        if (position > 0)
+            requestBuilder.header(HttpRangeReader.RANGE_HEADER, "bytes=" + position + "-");
+        call = httpHandler.newCall(requestBuilder.build());
+        response = call.execute();
+        if (response.code() == RANGE_NOT_SATISFIABLE) {
+            closeResponse();
+            eof = true;
+            return;
+        }
+        if (!response.isSuccessful()) {
+            int code = response.code();
+            closeResponse();
+            throw new IOException("Request for " + url + " failed with status " + code + ".");
+        }
+        in = response.body().byteStream();
+        if (response.code() != PARTIAL_CONTENT && position > 0) {
+            // range not supported, the body starts at the beginning of the file
+            long remaining = position;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        eof = true;
+                        return;
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        }
+    }
+
+    private static void backoff(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS << attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry.");
+        }
+    }
+
+    @Override
+    public void seek(long pos) {
+        if (pos == position)
+            return;
+        closeResponse();
+        position = pos;
+        eof = false;
+    }
+
+    @Override
+    public long getPos() {
+        return position;
+    }
+
+    @Override
+    public boolean seekToNewSource(long targetPos) {
+        return false;
+    }
+
+    private void closeResponse() {
+        if (call != null)
+            call.cancel();
+        if (response != null)
+            response.close();
+        call = null;
+        response = null;
+        in = null;
+    }
+
+    @Override
+    public void close() {
+        closeResponse();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.connector;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.pratyush.util.RangeReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link RangeReader} over a file served by the HTTP file server, every read is a {@code Range} request.
+ * <p>
+ * Requests start small and double in size with every read up to the length asked for, so reading the first lines
+ * of a file transfers only a few KB while sequential reads quickly reach full buffer sizes. If the server ignores the
+ * {@code Range} header, the full response is read up to the requested bytes and the call is cancelled.
+ */
+public class HttpRangeReader implements RangeReader {
+    public static final String RANGE_HEADER = "Range";
+    public static final String CONTENT_RANGE_HEADER = "Content-Range";
+    private static final int INITIAL_WINDOW = 16 * 1024;
+    private static final int MAX_WINDOW = 8 * 1024 * 1024;
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
+    private final HttpGsonHandler httpHandler;
+    private final String url;
+    private volatile long length = -1;
+    private volatile int window = INITIAL_WINDOW;
+
+    public HttpRangeReader(HttpGsonHandler httpHandler, String url) {
+        this.httpHandler = httpHandler;
+        this.url = url;
+    }
+
+    @Override
+    public long length() throws IOException {
+        if (length < 0) {
+            Request request = httpHandler.generateRequest(url).newBuilder().head().build();
+            try (Response response = httpHandler.generateResponse(request)) {
+                checkResponse(response);
+                String contentLength = response.header("Content-Length");
+                if (contentLength == null)
+                    throw new IOException("Server did not report the length of " + url + ".");
+                length = Long.parseLong(contentLength);
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (this.length >= 0 && position >= this.length)
+            return -1;
+        int count = Math.min(length, window);
+        window = Math.min(MAX_WINDOW, window * 2);
+
+        Request request = httpHandler.generateRequest(url).newBuilder()
+                .header(RANGE_HEADER, "bytes=" + position + "-" + (position + count - 1))
+                .build();
+        Call call = httpHandler.newCall(request);
+        try (Response response = call.execute()) {
+            if (response.code() == RANGE_NOT_SATISFIABLE)
+                return -1;
+            checkResponse(response);
+            ResponseBody body = response.body();
+            InputStream in = body.byteStream();
+            if (response.code() == PARTIAL_CONTENT) {
+                updateLength(response.header(CONTENT_RANGE_HEADER));
+            } else {
+                // range not supported, the body is the whole file
+                this.length = body.contentLength();
+                long skipped = in.skip(position);
+                if (skipped < position)
+                    return skipFully(in, position - skipped) ? readFully(in, buffer, offset, count) : -1;
+            }
+            int read = readFully(in, buffer, offset, count);
+            if (response.code() != PARTIAL_CONTENT)
+                call.cancel();
+            return read;
+        }
+    }
+
+    /**
+     * Takes the file length from a {@code bytes start-end/length} content range.
+     */
+    private void updateLength(String contentRange) {
+        if (contentRange == null)
+            return;
+        int separator = contentRange.lastIndexOf('/');
+        if (separator >= 0 && !contentRange.endsWith("*"))
+            length = Long.parseLong(contentRange.substring(separator + 1).trim());
+    }
+
+    private void checkResponse(Response response) throws IOException {
+        if (!response.isSuccessful())
+            throw new IOException("Request for " + url + " failed with status " + response.code() + ".");
+    }
+
+    private static boolean skipFully(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            if (in.read() < 0)
+                return false;
+            remaining -= 1 + in.skip(remaining - 1);
+        }
+        return true;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        int read;
+        while (total < length && (read = in.read(buffer, offset + total, length - total)) >= 0) {
+            total += read;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public void close() {
+        // every read is a call of its own, nothing is kept open
+    }
+}
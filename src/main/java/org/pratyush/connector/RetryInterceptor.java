@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.connector;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries idempotent requests (GET and HEAD) that fail with an I/O error, a 5xx status or 429, waiting with
+ * exponential backoff and jitter between attempts.
+ */
+public class RetryInterceptor implements Interceptor {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    private final int maxRetries;
+    private final long backoffMillis;
+
+    public RetryInterceptor(int maxRetries, long backoffMillis) {
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean idempotent = "GET".equals(request.method()) || "HEAD".equals(request.method());
+        for (int attempt = 0; ; attempt++) {
+            boolean lastAttempt = !idempotent || attempt >= maxRetries;
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                if (lastAttempt || chain.call().isCanceled() || isInterruption(e))
+                    throw e;
+                sleep(attempt);
+                continue;
+            }
+            if (lastAttempt || !isRetryable(response.code()))
+                return response;
+            response.close();
+            sleep(attempt);
+        }
+    }
+
+    /**
+     * Whether {@code e} means the caller gave up rather than the request failed. Connect and read timeouts are
+     * {@link InterruptedIOException}s too, but they are retried like any other I/O error.
+     */
+    static boolean isInterruption(IOException e) {
+        return Thread.currentThread().isInterrupted()
+                || e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    private static boolean isRetryable(int code) {
+        return code >= 500 || code == TOO_MANY_REQUESTS;
+    }
+
+    private void sleep(int attempt) throws InterruptedIOException {
+        // the shift is clamped, a large attempt would overflow long before the cap applies
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt, MAX_BACKOFF_SHIFT));
+        try {
+            // equal jitter, at least half the backoff, and retries of concurrent requests do not hit the server at once
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry.");
+        }
+    }
+}
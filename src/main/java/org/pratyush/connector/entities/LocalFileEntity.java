@@ -15,10 +15,22 @@
  */
 package org.pratyush.connector.entities;
 
+import javax.annotation.Nullable;
+
+/**
+ * An entry of a directory listing of the node server. Size and modification time (epoch millis) are only sent by
+ * servers that support paginated listings, the row count only for files with a current row index sidecar.
+ */
 public class LocalFileEntity {
     private String name;
     private Boolean dir;
     private String ref;
+    @Nullable
+    private Long size;
+    @Nullable
+    private Long mtime;
+    @Nullable
+    private Long rows;
 
     public String getName() {
         return name;
@@ -28,4 +40,19 @@ public class LocalFileEntity {
         return dir;
     }
 
+    @Nullable
+    public Long getSize() {
+        return size;
+    }
+
+    @Nullable
+    public Long getMtime() {
+        return mtime;
+    }
+
+    @Nullable
+    public Long getRows() {
+        return rows;
+    }
+
 }
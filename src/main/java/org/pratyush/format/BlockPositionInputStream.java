@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.pratyush.format;
+
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Remembers which position a block compressed split stream reported while it returned each part of the decompressed
+ * data. The stream reports the next block only once the first byte of that block is read, but a reader buffers ahead
+ * of the record it parses, so the current position of the stream belongs to data that is not consumed yet.
+ * {@link #getPosition(long)} gives the position for the bytes actually consumed.
+ */
+class BlockPositionInputStream extends InputStream {
+    private final SplitCompressionInputStream in;
+    // decompressed offsets at which the reported position changed and the position from there on, oldest first
+    private final ArrayDeque<long[]> changes = new ArrayDeque<>();
+    private long offset;
+    private long lastPosition;
+
+    BlockPositionInputStream(SplitCompressionInputStream in) throws IOException {
+        this.in = in;
+        lastPosition = in.getPos();
+        changes.add(new long[]{0, lastPosition});
+    }
+
+    /**
+     * Position the stream reported after returning the first {@code consumed} decompressed bytes. Calls have to pass
+     * growing offsets, positions of earlier offsets are forgotten.
+     */
+    long getPosition(long consumed) {
+        long[] current = changes.pollFirst();
+        while (!changes.isEmpty() && changes.peekFirst()[0] < consumed)
+            current = changes.pollFirst();
+        changes.addFirst(current);
+        return current[1];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int length) throws IOException {
+        int read = in.read(buffer, off, length);
+        if (read > 0) {
+            long position = in.getPos();
+            if (position != lastPosition) {
+                changes.add(new long[]{offset, position});
+                lastPosition = position;
+            }
+            offset += read;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
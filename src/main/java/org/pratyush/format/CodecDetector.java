@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.io.compress.ZStandardCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.pratyush.connector.HttpInputStream;
+import org.pratyush.util.CsvHelper;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Detects the compression codec of an input file, from its extension first and from its magic bytes otherwise.
+ * <p>
+ * Magic bytes are only checked for gzip, bzip2 and zstd, whose file formats match what the Hadoop codecs read.
+ * The Hadoop lz4 codec reads its own block format rather than the lz4 frame format, so lz4 is only detected by the
+ * {@code .lz4} extension. zstd and lz4 need the native Hadoop library at runtime.
+ */
+public final class CodecDetector {
+    private static final Map<String, Class<? extends CompressionCodec>> EXTENSIONS = new HashMap<>();
+    private static final byte[] GZIP_MAGIC = {0x1f, (byte) 0x8b};
+    private static final byte[] BZIP2_MAGIC = {'B', 'Z', 'h'};
+    private static final byte[] ZSTD_MAGIC = {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd};
+    private static final int MAGIC_LENGTH = 4;
+
+    static {
+        EXTENSIONS.put(".gz", GzipCodec.class);
+        EXTENSIONS.put(".bz2", BZip2Codec.class);
+        EXTENSIONS.put(".zst", ZStandardCodec.class);
+        EXTENSIONS.put(".lz4", Lz4Codec.class);
+        EXTENSIONS.put(".deflate", DefaultCodec.class);
+    }
+
+    private CodecDetector() {
+    }
+
+    /**
+     * Returns the codec of {@code path}, {@code null} if it is not compressed.
+     */
+    @Nullable
+    public static CompressionCodec getCodec(Configuration conf, Path path) throws IOException {
+        Class<? extends CompressionCodec> codecClass = getCodecClass(path.getName());
+        if (codecClass != null)
+            return ReflectionUtils.newInstance(codecClass, conf);
+        CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(path);
+        // remote files are not opened just to look at their first bytes
+        if (codec != null || CsvHelper.isPlainTextFile(path.getName()) || CsvInputFormat.isRemote(path))
+            return codec;
+
+        byte[] magic = new byte[MAGIC_LENGTH];
+        int read;
+        FileSystem fs = path.getFileSystem(conf);
+        try (FSDataInputStream in = fs.open(path)) {
+            read = readFully(in, magic);
+        }
+        codecClass = getCodecClass(magic, read);
+        return codecClass == null ? null : ReflectionUtils.newInstance(codecClass, conf);
+    }
+
+    /**
+     * Opens {@code path}, local or remote, and decompresses it if needed.
+     */
+    public static InputStream open(Configuration conf, Path path) throws IOException {
+        InputStream in = CsvInputFormat.isRemote(path)
+                ? new HttpInputStream(CsvInputFormat.getHttpHandler(conf), path.toString(), 0)
+                : path.getFileSystem(conf).open(path);
+        CompressionCodec codec = getCodec(conf, path);
+        return codec == null ? in : codec.createInputStream(in);
+    }
+
+    /**
+     * Wraps a stream of a file named {@code name}, e.g. an HTTP response body, into a decompressing stream if needed.
+     */
+    public static InputStream decompress(InputStream in, String name) throws IOException {
+        Class<? extends CompressionCodec> codecClass = getCodecClass(name);
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        if (codecClass == null && !CsvHelper.isPlainTextFile(name)) {
+            byte[] magic = new byte[MAGIC_LENGTH];
+            buffered.mark(MAGIC_LENGTH);
+            int read = readFully(buffered, magic);
+            buffered.reset();
+            codecClass = getCodecClass(magic, read);
+        }
+        if (codecClass == null)
+            return buffered;
+        if (codecClass == GzipCodec.class)
+            return new GZIPInputStream(buffered);
+        return ReflectionUtils.newInstance(codecClass, new Configuration()).createInputStream(buffered);
+    }
+
+    @Nullable
+    private static Class<? extends CompressionCodec> getCodecClass(String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        int extensionStart = lowerName.lastIndexOf('.');
+        return extensionStart < 0 ? null : EXTENSIONS.get(lowerName.substring(extensionStart));
+    }
+
+    @Nullable
+    private static Class<? extends CompressionCodec> getCodecClass(byte[] magic, int length) {
+        if (startsWith(magic, length, GZIP_MAGIC))
+            return GzipCodec.class;
+        if (startsWith(magic, length, BZIP2_MAGIC))
+            return BZip2Codec.class;
+        if (startsWith(magic, length, ZSTD_MAGIC))
+            return ZStandardCodec.class;
+        return null;
+    }
+
+    private static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+        if (length < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) >= 0) {
+            total += read;
+        }
+        return total;
+    }
+}
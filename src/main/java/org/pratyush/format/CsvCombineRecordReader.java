@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.IOException;
+
+/**
+ * Reads a single file chunk of a {@link CombineFileSplit} with a {@link CsvRecordReader}. Instantiated by
+ * {@link CombineFileRecordReader} once per chunk.
+ */
+public class CsvCombineRecordReader extends RecordReader<LongWritable, Text> {
+    private final CsvRecordReader delegate = new CsvRecordReader();
+    private final FileSplit fileSplit;
+
+    public CsvCombineRecordReader(CombineFileSplit split, TaskAttemptContext context, Integer idx) throws IOException {
+        this.fileSplit = new FileSplit(split.getPath(idx), split.getOffset(idx), split.getLength(idx),
+                split.getLocations());
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+        delegate.initialize(fileSplit, context);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+        return delegate.nextKeyValue();
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+        return delegate.getCurrentKey();
+    }
+
+    @Override
+    public Text getCurrentValue() {
+        return delegate.getCurrentValue();
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+        return delegate.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.util.StringUtils;
+import org.pratyush.connector.HttpGsonHandler;
+import org.pratyush.connector.HttpRangeReader;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input format for CSV files whose quoted fields may contain line breaks. Uncompressed files are split at the
+ * configured size, every split resynchronises on the quote state to find its first record.
+ * <p>
+ * Input paths may be files, directories or globs. Small files and chunks of large files are packed together into
+ * splits of up to the configured size, so thousands of small files do not end up as thousands of tasks. Every file
+ * chunk of a combined split is read by its own {@link CsvRecordReader}, see {@link CsvCombineRecordReader}.
+ * <p>
+ * In ranges only mode, only the byte ranges set with {@link #setRange(Job, Path, long, long)} or
+ * {@link #setRangeBoundaries(Job, Path, long[])} are read. Their start and end are record boundaries, so they are read
+ * without resynchronisation. Used by incremental reads and by splits planned from a {@link RowIndex}.
+ * <p>
+ * Input paths with an http or https scheme are read from the HTTP file server. Their splits are planned from the
+ * length the server reports, and every split is streamed with a range request.
+ * <p>
+ * Compressed files are detected by {@link CodecDetector}. Files compressed with a splittable codec (bzip2) are split
+ * on compression block boundaries, all other compressed files are read by a single split.
+ */
+public class CsvInputFormat extends CombineFileInputFormat<LongWritable, Text> {
+    public static final String DELIMITER = "localfile.csv.delimiter";
+    public static final String QUOTE_AWARE = "localfile.csv.quote.aware";
+    public static final String SKIP_LEADING_LINES = "localfile.csv.skip.leading.lines";
+    public static final String SKIP_TRAILING_LINES = "localfile.csv.skip.trailing.lines";
+    public static final String RANGES_ONLY = "localfile.csv.ranges.only";
+    public static final String RANGE_PREFIX = "localfile.csv.range.";
+    public static final String RECORD_LIMIT_PREFIX = "localfile.csv.record.limit.";
+    public static final String HTTP_AUTHORIZATION = "localfile.http.authorization";
+    public static final String METRICS_STAGE = "localfile.metrics.stage";
+    public static final String DEFAULT_DELIMITER = ",";
+    public static final long DEFAULT_SPLIT_SIZE = 128L * 1024 * 1024;
+
+    public static void setDelimiter(Job job, String delimiter) {
+        job.getConfiguration().set(DELIMITER, delimiter);
+    }
+
+    public static void setQuoteAware(Job job, boolean quoteAware) {
+        job.getConfiguration().setBoolean(QUOTE_AWARE, quoteAware);
+    }
+
+    /**
+     * Number of records dropped at the start of every file, including the header.
+     */
+    public static void setSkipLeadingLines(Job job, int lines) {
+        job.getConfiguration().setInt(SKIP_LEADING_LINES, lines);
+    }
+
+    /**
+     * Number of records dropped at the end of every file. They have to be part of the last split of the file, which
+     * holds as long as the split size is not smaller than the footer.
+     */
+    public static void setSkipTrailingLines(Job job, int lines) {
+        job.getConfiguration().setInt(SKIP_TRAILING_LINES, lines);
+    }
+
+    /**
+     * Uses {@code splitSize} as both minimum and maximum, so splits do not fall back to the (small) block size of
+     * the local file system. Files and file chunks are combined into splits of at most this size.
+     */
+    public static void setSplitSize(Job job, long splitSize) {
+        setMinInputSplitSize(job, splitSize);
+        setMaxInputSplitSize(job, splitSize);
+    }
+
+    /**
+     * Whether the files of sub directories of an input directory are read too.
+     */
+    public static void setRecursive(Job job, boolean recursive) {
+        setInputDirRecursive(job, recursive);
+    }
+
+    /**
+     * Makes the record readers report to the {@link ReaderMetrics} of {@code stageName}.
+     */
+    public static void setMetricsStage(Job job, String stageName) {
+        job.getConfiguration().set(METRICS_STAGE, stageName);
+    }
+
+    /**
+     * Reads the file at {@code url} from the HTTP file server. The path is set as is, an http path can not be qualified
+     * against a Hadoop file system.
+     */
+    public static void setRemoteInputPath(Job job, String url, @Nullable String authorization) {
+        job.getConfiguration().set(INPUT_DIR, StringUtils.escapeString(url));
+        if (authorization != null)
+            job.getConfiguration().set(HTTP_AUTHORIZATION, authorization);
+    }
+
+    public static boolean isRemote(Path path) {
+        String scheme = path.toUri().getScheme();
+        return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+    }
+
+    /**
+     * Creates a handler for the HTTP file server, authorised with the configured Authorization header.
+     */
+    public static HttpGsonHandler getHttpHandler(Configuration conf) {
+        return new HttpGsonHandler(conf.get(HTTP_AUTHORIZATION));
+    }
+
+    /**
+     * Reads only the files that have a range set, see {@link #setRange(Job, Path, long, long)}.
+     */
+    public static void setRangesOnly(Job job) {
+        job.getConfiguration().setBoolean(RANGES_ONLY, true);
+    }
+
+    /**
+     * Restricts reading {@code file} to {@code [start, end)}. Both offsets have to be record boundaries, which skips
+     * the resynchronisation at the start of the range. For compressed files only the whole file can be set.
+     */
+    public static void setRange(Job job, Path file, long start, long end) {
+        setRangeBoundaries(job, file, new long[]{start, end});
+    }
+
+    /**
+     * Reads {@code file} from the first to the last of {@code boundaries}, cut into ranges at every boundary in
+     * between. All boundaries have to be record boundaries, e.g. from a {@link RowIndex}, every range then is read by
+     * a split of its own without resynchronisation.
+     */
+    public static void setRangeBoundaries(Job job, Path file, long[] boundaries) {
+        StringBuilder value = new StringBuilder();
+        for (long boundary : boundaries) {
+            value.append(value.length() == 0 ? "" : ":").append(boundary);
+        }
+        job.getConfiguration().set(RANGE_PREFIX + file, value.toString());
+    }
+
+    /**
+     * Boundaries set for {@code file}, at least the start and end of its range, {@code null} if none are set.
+     */
+    @Nullable
+    static long[] getRangeBoundaries(Configuration conf, Path file) {
+        String range = conf.get(RANGE_PREFIX + file);
+        if (range == null)
+            return null;
+        String[] values = range.split(":");
+        long[] boundaries = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boundaries[i] = Long.parseLong(values[i]);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Stops reading {@code file} after {@code records} records, not counting skipped leading lines. The file is then
+     * read by a single split from its start, also if it is remote or compressed with a splittable codec.
+     */
+    public static void setRecordLimit(Job job, Path file, long records) {
+        job.getConfiguration().setLong(RECORD_LIMIT_PREFIX + file, records);
+    }
+
+    /**
+     * Record limit set for {@code file}, -1 if there is none.
+     */
+    static long getRecordLimit(Configuration conf, Path file) {
+        return conf.getLong(RECORD_LIMIT_PREFIX + file, -1);
+    }
+
+    /**
+     * Lists the files matched by the input paths of {@code job}, after expanding globs and directories.
+     */
+    public static List<FileStatus> listInputFiles(Job job) throws IOException {
+        return new CsvInputFormat().listStatus(job);
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        Path[] inputPaths = getInputPaths(job);
+        if (inputPaths.length > 0 && isRemote(inputPaths[0]))
+            return getRemoteSplits(job, inputPaths);
+        if (!conf.getBoolean(RANGES_ONLY, false))
+            return super.getSplits(job);
+
+        // ranges are cut into chunks of at most the split size, consecutive chunks are packed into a split
+        long maxSize = conf.getLong(SPLIT_MAXSIZE, DEFAULT_SPLIT_SIZE);
+        List<InputSplit> splits = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+        List<Long> starts = new ArrayList<>();
+        List<Long> lengths = new ArrayList<>();
+        long splitSize = 0;
+        for (FileStatus file : listStatus(job)) {
+            long[] boundaries = getRangeBoundaries(conf, file.getPath());
+            if (boundaries == null)
+                continue;
+            boolean splitable = isSplitable(job, file.getPath()) && getRecordLimit(conf, file.getPath()) < 0;
+            // ranges cut at inner boundaries are balanced already, they are not packed with their neighbours
+            boolean balanced = boundaries.length > 2;
+            for (int i = 0; i + 1 < boundaries.length; i++) {
+                long rangeEnd = boundaries[i + 1];
+                for (long chunkStart = boundaries[i]; chunkStart < rangeEnd; ) {
+                    long chunkLength = splitable ? Math.min(maxSize, rangeEnd - chunkStart) : rangeEnd - chunkStart;
+                    boolean rangeStart = balanced && chunkStart == boundaries[i];
+                    if (splitSize > 0 && (rangeStart || splitSize + chunkLength > maxSize)) {
+                        splits.add(toSplit(paths, starts, lengths));
+                        splitSize = 0;
+                    }
+                    paths.add(file.getPath());
+                    starts.add(chunkStart);
+                    lengths.add(chunkLength);
+                    splitSize += chunkLength;
+                    chunkStart += chunkLength;
+                }
+            }
+        }
+        if (!paths.isEmpty())
+            splits.add(toSplit(paths, starts, lengths));
+        return splits;
+    }
+
+    /**
+     * Cuts every remote file into splits of the configured size, using the length reported by the server.
+     */
+    private List<InputSplit> getRemoteSplits(JobContext job, Path[] inputPaths) throws IOException {
+        Configuration conf = job.getConfiguration();
+        long maxSize = conf.getLong(SPLIT_MAXSIZE, DEFAULT_SPLIT_SIZE);
+        HttpGsonHandler httpHandler = getHttpHandler(conf);
+        List<InputSplit> splits = new ArrayList<>();
+        for (Path path : inputPaths) {
+            long length;
+            try (HttpRangeReader reader = new HttpRangeReader(httpHandler, path.toString())) {
+                length = reader.length();
+            }
+            long splitSize = isSplitable(job, path) && getRecordLimit(conf, path) < 0 ? maxSize : length;
+            for (long start = 0; start < length; start += splitSize) {
+                long splitLength = Math.min(splitSize, length - start);
+                splits.add(new CombineFileSplit(new Path[]{path}, new long[]{start}, new long[]{splitLength},
+                        new String[0]));
+            }
+        }
+        return splits;
+    }
+
+    private static CombineFileSplit toSplit(List<Path> paths, List<Long> starts, List<Long> lengths) {
+        long[] startArray = new long[starts.size()];
+        long[] lengthArray = new long[lengths.size()];
+        for (int i = 0; i < startArray.length; i++) {
+            startArray[i] = starts.get(i);
+            lengthArray[i] = lengths.get(i);
+        }
+        CombineFileSplit split = new CombineFileSplit(paths.toArray(new Path[0]), startArray, lengthArray,
+                new String[0]);
+        paths.clear();
+        starts.clear();
+        lengths.clear();
+        return split;
+    }
+
+    @Override
+    protected List<FileStatus> listStatus(JobContext job) throws IOException {
+        List<FileStatus> files = super.listStatus(job);
+        // without recursion, the sub directories of an input directory are listed as entries of their own
+        files.removeIf(FileStatus::isDirectory);
+        return files;
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        try {
+            CompressionCodec codec = CodecDetector.getCodec(context.getConfiguration(), file);
+            return codec == null || codec instanceof SplittableCompressionCodec && !isRemote(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context)
+            throws IOException {
+        return new CombineFileRecordReader<>((CombineFileSplit) split, context, CsvCombineRecordReader.class);
+    }
+}
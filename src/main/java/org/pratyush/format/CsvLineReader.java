@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.io.Text;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads complete CSV records from a stream. A newline inside a quoted field does not end the record.
+ * <p>
+ * Quotes are interpreted the same way as {@link org.pratyush.util.CsvTokenizer} does: only a quote at the start of a
+ * field opens a quoted field, quotes in the middle of an unquoted field are plain characters.
+ * The trailing line terminator ({@code \n} or {@code \r\n}) is not part of the returned record.
+ */
+public class CsvLineReader implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte QUOTE = '"';
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final boolean quoteAware;
+    private final byte[] buffer;
+    private int bufferLength;
+    private int bufferPos;
+
+    private byte[] record = new byte[1024];
+    private int recordLength;
+    private boolean terminated;
+
+    public CsvLineReader(InputStream in, byte[] delimiter, boolean quoteAware) {
+        this(in, delimiter, quoteAware, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvLineReader(InputStream in, byte[] delimiter, boolean quoteAware, int bufferSize) {
+        this.in = in;
+        this.delimiter = delimiter;
+        this.quoteAware = quoteAware;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Reads the next record into {@code value}.
+     *
+     * @return number of bytes consumed from the stream including the line terminator, 0 at end of stream
+     */
+    public int readRecord(Text value) throws IOException {
+        recordLength = 0;
+        terminated = false;
+        int consumed = 0;
+        int state = FIELD_START;
+
+        while (true) {
+            if (bufferPos >= bufferLength) {
+                bufferPos = 0;
+                bufferLength = in.read(buffer);
+                if (bufferLength < 0) {
+                    bufferLength = 0;
+                    break;
+                }
+                continue;
+            }
+
+            int chunkStart = bufferPos;
+            int pos = chunkStart;
+            boolean recordEnd = false;
+            for (; pos < bufferLength; pos++) {
+                byte b = buffer[pos];
+                if (!quoteAware) {
+                    if (b == NEWLINE) {
+                        recordEnd = true;
+                        break;
+                    }
+                    continue;
+                }
+                switch (state) {
+                    case QUOTED:
+                        if (b == QUOTE)
+                            state = QUOTE_IN_QUOTED;
+                        continue;
+                    case QUOTE_IN_QUOTED:
+                        if (b == QUOTE) {
+                            state = QUOTED;
+                            continue;
+                        }
+                        break;
+                    case FIELD_START:
+                        if (b == QUOTE) {
+                            state = QUOTED;
+                            continue;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                // outside of quotes
+                if (b == NEWLINE) {
+                    recordEnd = true;
+                    break;
+                }
+                state = endsWithDelimiter(chunkStart, pos) ? FIELD_START : UNQUOTED;
+            }
+
+            append(chunkStart, pos - chunkStart);
+            if (recordEnd) {
+                terminated = true;
+                bufferPos = pos + 1;
+                consumed += pos - chunkStart + 1;
+                return finish(value, consumed);
+            }
+            bufferPos = pos;
+            consumed += pos - chunkStart;
+        }
+        return consumed == 0 ? 0 : finish(value, consumed);
+    }
+
+    /**
+     * Whether the last record read ended with a line terminator, rather than with the end of the stream.
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    private int finish(Text value, int consumed) {
+        if (recordLength > 0 && record[recordLength - 1] == CARRIAGE_RETURN)
+            recordLength--;
+        value.set(record, 0, recordLength);
+        return consumed;
+    }
+
+    /**
+     * Checks whether the byte at {@code pos} completes a delimiter, looking back into the record collected so far
+     * for the bytes that came with earlier buffer fills.
+     */
+    private boolean endsWithDelimiter(int chunkStart, int pos) {
+        for (int i = 0; i < delimiter.length; i++) {
+            int bufferIdx = pos - i;
+            byte b;
+            if (bufferIdx >= chunkStart) {
+                b = buffer[bufferIdx];
+            } else {
+                int recordIdx = recordLength - (chunkStart - bufferIdx);
+                if (recordIdx < 0)
+                    return false;
+                b = record[recordIdx];
+            }
+            if (b != delimiter[delimiter.length - 1 - i])
+                return false;
+        }
+        return true;
+    }
+
+    private void append(int start, int length) {
+        if (recordLength + length > record.length)
+            record = Arrays.copyOf(record, Math.max(record.length * 2, recordLength + length));
+        System.arraycopy(buffer, start, record, recordLength, length);
+        recordLength += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+
+import javax.annotation.Nullable;
+
+/**
+ * A raw CSV record that also names the file it was read from, so the consumer of a record can tell which file its key
+ * is an offset into. Only the text is serialized, the file is lost when the record is written out.
+ */
+public class CsvRecord extends Text {
+    private Path file;
+
+    @Nullable
+    public Path getFile() {
+        return file;
+    }
+
+    public void setFile(@Nullable Path file) {
+        this.file = file;
+    }
+
+    /**
+     * File {@code record} was read from, {@code null} if it is a plain {@link Text}.
+     */
+    @Nullable
+    public static Path fileOf(Text record) {
+        return record instanceof CsvRecord ? ((CsvRecord) record).getFile() : null;
+    }
+}
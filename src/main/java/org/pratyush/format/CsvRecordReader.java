@@ -0,0 +1,367 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.pratyush.connector.HttpInputStream;
+import org.pratyush.util.MappedRangeReader;
+import org.pratyush.util.RangeInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the CSV records that start inside a {@link FileSplit}. The key is the byte offset of the record in the file,
+ * the value a {@link CsvRecord} that names the file.
+ * Remote files are streamed with {@link HttpInputStream}, which resumes on failed reads. Uncompressed files on the
+ * local file system are read from memory with {@link MappedRangeReader}, bypassing the checksummed Hadoop stream.
+ * <p>
+ * A split that does not start at the beginning of the file first moves to the next record boundary, see
+ * {@link RecordBoundaryFinder}. The record that starts at or before the end of the split is read completely, even if
+ * it extends into the next split.
+ * <p>
+ * Splits of a file compressed with a splittable codec are widened to whole compression blocks, and the end of the
+ * split is checked against the position in the compressed file. Offsets into the decompressed data are only known from
+ * the first block of the split, so like Hadoop's {@code LineRecordReader} their keys are the position of the compressed
+ * block being read instead. All records of a block share that key, but it means the same block in every split. Other
+ * compressed files are read from their start and keyed by the offset into the decompressed data.
+ * <p>
+ * Leading lines (including the header) are dropped by the split that starts the file, also where they reach past its
+ * end, and later splits of an uncompressed file skip records that still belong to them. Trailing lines are dropped by
+ * the split that reads them: every split holds its last records back and reads up to as many records past its end to
+ * tell whether they end the file. So every file of the input gets its header removed without any per record check
+ * downstream.
+ * <p>
+ * A record limit set for the file stops the split at its start once that many records are read, the reader then
+ * returns no more records without reading any further.
+ * <p>
+ * Rows, bytes, skipped header rows and the wall time of the split are reported to {@link ReaderMetrics}.
+ */
+public class CsvRecordReader extends RecordReader<LongWritable, Text> {
+    private static final int METRICS_FLUSH_INTERVAL = 10000;
+
+    private final LongWritable key = new LongWritable();
+    private final CsvRecord value = new CsvRecord();
+
+    // records held back while looking for the end of the file, only used when trailing lines are dropped
+    private long[] pendingKeys;
+    private Text[] pendingValues;
+    private int pendingHead;
+    private int pendingCount;
+    // held back records still emitted once the split is read, -1 until then
+    private int pendingEmittable = -1;
+
+    private InputStream fileIn;
+    private Seekable seekableIn;
+    private MappedRangeReader mappedReader;
+    private Decompressor decompressor;
+    private BlockPositionInputStream blockIn;
+    private CsvLineReader lineReader;
+    private long splitStart;
+    private long splitLength;
+    private long end;
+    // exclusive end of the range to read in ranges only mode, no record starting at or after it is read
+    private long limit = Long.MAX_VALUE;
+    private long pos;
+    private boolean done;
+    // records left before the record limit of the file is reached, -1 without a limit
+    private long recordsLeft = -1;
+
+    private ReaderMetrics metrics;
+    private long startNanos;
+    private long unflushedRows;
+    private long unflushedBytes;
+
+    @Override
+    public void initialize(InputSplit inputSplit, TaskAttemptContext context) throws IOException {
+        startNanos = System.nanoTime();
+        FileSplit split = (FileSplit) inputSplit;
+        Configuration conf = context.getConfiguration();
+        metrics = ReaderMetrics.fromConfiguration(conf);
+        Path file = split.getPath();
+        value.setFile(file);
+        byte[] delimiter = conf.get(CsvInputFormat.DELIMITER, CsvInputFormat.DEFAULT_DELIMITER)
+                .getBytes(StandardCharsets.UTF_8);
+        boolean quoteAware = conf.getBoolean(CsvInputFormat.QUOTE_AWARE, true);
+        int leadingLines = conf.getInt(CsvInputFormat.SKIP_LEADING_LINES, 0);
+
+        splitStart = split.getStart();
+        splitLength = split.getLength();
+        long start = splitStart;
+        end = splitStart + splitLength;
+        boolean remote = CsvInputFormat.isRemote(file);
+        CompressionCodec codec = CodecDetector.getCodec(conf, file);
+        if (remote) {
+            HttpInputStream httpIn = new HttpInputStream(CsvInputFormat.getHttpHandler(conf), file.toString(), 0);
+            fileIn = httpIn;
+            seekableIn = httpIn;
+        } else if (codec == null && isLocal(file.getFileSystem(conf))) {
+            mappedReader = new MappedRangeReader(file.toUri().getPath());
+            RangeInputStream mappedIn = new RangeInputStream(mappedReader, 0);
+            fileIn = mappedIn;
+            seekableIn = mappedIn;
+        } else {
+            FSDataInputStream localIn = file.getFileSystem(conf).open(file);
+            fileIn = localIn;
+            seekableIn = localIn;
+        }
+
+        InputStream in;
+        if (codec instanceof SplittableCompressionCodec) {
+            decompressor = CodecPool.getDecompressor(codec);
+            SplitCompressionInputStream splitIn = ((SplittableCompressionCodec) codec).createInputStream(fileIn,
+                    decompressor, start, end, SplittableCompressionCodec.READ_MODE.BYBLOCK);
+            end = splitIn.getAdjustedEnd();
+            blockIn = new BlockPositionInputStream(splitIn);
+            in = blockIn;
+            // pos counts decompressed bytes from the start of the split, positions in the file come from blockIn
+            start = 0;
+            if (splitStart != 0) {
+                // the decompressed stream can not seek, so the bytes read while looking for a record are replayed
+                ReplayInputStream replay = new ReplayInputStream(blockIn);
+                long skip = RecordBoundaryFinder.findRecordStart(replay, delimiter, quoteAware);
+                done = skip < 0;
+                start = Math.max(skip, 0);
+                replay.replayFrom(start);
+                in = replay;
+            }
+        } else if (codec != null) {
+            decompressor = CodecPool.getDecompressor(codec);
+            in = codec.createInputStream(fileIn, decompressor);
+            end = Long.MAX_VALUE;
+        } else {
+            long[] boundaries = CsvInputFormat.getRangeBoundaries(conf, file);
+            boolean atRecordStart = start == 0;
+            if (boundaries != null) {
+                // a chunk starting on a boundary reads up to the next one, other chunks resynchronise first
+                int next = 1;
+                while (next < boundaries.length - 1 && boundaries[next] <= start)
+                    next++;
+                atRecordStart = start == boundaries[next - 1];
+                limit = boundaries[next];
+            }
+            seekableIn.seek(start);
+            if (!atRecordStart) {
+                long skip = RecordBoundaryFinder.findRecordStart(fileIn, delimiter, quoteAware);
+                done = skip < 0;
+                start += Math.max(skip, 0);
+                seekableIn.seek(start);
+            }
+            if (start > 0 && leadingLines > 0 && !done) {
+                start = Math.max(start, findRecordsEnd(leadingLines, delimiter, quoteAware));
+                seekableIn.seek(start);
+            }
+            in = fileIn;
+        }
+        pos = start;
+        lineReader = new CsvLineReader(in, delimiter, quoteAware);
+
+        if (splitStart == 0) {
+            recordsLeft = CsvInputFormat.getRecordLimit(conf, file);
+            int skipped = 0;
+            while (skipped < leadingLines && readNextRecord(value)) {
+                skipped++;
+            }
+            if (metrics != null)
+                metrics.addHeaderRowsSkipped(skipped);
+        }
+        int trailingLines = conf.getInt(CsvInputFormat.SKIP_TRAILING_LINES, 0);
+        if (trailingLines > 0) {
+            pendingKeys = new long[trailingLines + 1];
+            pendingValues = new Text[trailingLines + 1];
+            for (int i = 0; i < pendingValues.length; i++) {
+                pendingValues[i] = new Text();
+            }
+        }
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+        if (recordsLeft == 0)
+            return false;
+        if (pendingValues == null) {
+            long recordStart = getFilePosition();
+            if (!readRecord(value))
+                return false;
+            key.set(recordStart);
+            countRow();
+            return true;
+        }
+
+        // keep as many records buffered as trailing lines are dropped, the rest is emitted in order
+        while (pendingCount < pendingValues.length) {
+            int slot = (pendingHead + pendingCount) % pendingValues.length;
+            long recordStart = getFilePosition();
+            if (!readRecord(pendingValues[slot])) {
+                if (pendingEmittable < 0)
+                    pendingEmittable = Math.max(0, pendingCount - countTrailingPending());
+                if (pendingEmittable == 0)
+                    return false;
+                pendingEmittable--;
+                break;
+            }
+            pendingKeys[slot] = recordStart;
+            pendingCount++;
+        }
+        key.set(pendingKeys[pendingHead]);
+        value.set(pendingValues[pendingHead]);
+        pendingHead = (pendingHead + 1) % pendingValues.length;
+        pendingCount--;
+        countRow();
+        return true;
+    }
+
+    private void countRow() {
+        if (recordsLeft > 0)
+            recordsLeft--;
+        if (++unflushedRows >= METRICS_FLUSH_INTERVAL)
+            flushMetrics();
+    }
+
+    private void flushMetrics() {
+        if (metrics != null)
+            metrics.addRows(unflushedRows, unflushedBytes);
+        unflushedRows = 0;
+        unflushedBytes = 0;
+    }
+
+    /**
+     * Reads past the end of the split to count how many of the held back records are trailing lines of the file.
+     */
+    private int countTrailingPending() throws IOException {
+        int trailingLines = pendingValues.length - 1;
+        int following = 0;
+        while (following < trailingLines && readNextRecord(value)) {
+            following++;
+        }
+        return trailingLines - following;
+    }
+
+    /**
+     * End of the first {@code records} records of the file, the caller has to seek the stream afterwards.
+     */
+    private long findRecordsEnd(int records, byte[] delimiter, boolean quoteAware) throws IOException {
+        seekableIn.seek(0);
+        // not closed, that would close the file
+        CsvLineReader headerReader = new CsvLineReader(fileIn, delimiter, quoteAware);
+        Text record = new Text();
+        long recordsEnd = 0;
+        int consumed;
+        for (int i = 0; i < records && (consumed = headerReader.readRecord(record)) > 0; i++) {
+            recordsEnd += consumed;
+        }
+        return recordsEnd;
+    }
+
+    private boolean readRecord(Text record) throws IOException {
+        if (getFilePosition() > end || pos >= limit)
+            return false;
+        return readNextRecord(record);
+    }
+
+    /**
+     * Reads the next record, also if it starts after the end of the split.
+     */
+    private boolean readNextRecord(Text record) throws IOException {
+        if (done)
+            return false;
+        int consumed = lineReader.readRecord(record);
+        if (consumed == 0) {
+            done = true;
+            return false;
+        }
+        pos += consumed;
+        unflushedBytes += consumed;
+        return true;
+    }
+
+    private static boolean isLocal(FileSystem fs) {
+        return "file".equals(fs.getUri().getScheme());
+    }
+
+    /**
+     * Position compared against the end of the split and used as the key of the next record, for block compressed
+     * splits this is the position of the block holding the last consumed byte in the compressed file.
+     * <p>
+     * That position moves on to the next block only once the first byte of that block is consumed, so the split
+     * still reads a record starting right at the first block of the next split, which always drops its first record.
+     * Records end with a single {@code '\n'}, a block boundary inside a {@code "\r\n"} leaves the {@code '\n'} to
+     * the next split, which then starts with the record after it. That is what Hadoop's
+     * {@code CompressedSplitLineReader.needAdditionalRecordAfterSplit()} covers for its line reader.
+     */
+    private long getFilePosition() {
+        return blockIn != null ? blockIn.getPosition(pos) : pos;
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+        return key;
+    }
+
+    @Override
+    public CsvRecord getCurrentValue() {
+        return value;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+        if (done || splitLength == 0)
+            return done ? 1.0f : 0.0f;
+        return Math.min(1.0f, (seekableIn.getPos() - splitStart) / (float) splitLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushMetrics();
+        if (metrics != null && startNanos != 0) {
+            metrics.addSplit((System.nanoTime() - startNanos) / 1_000_000);
+            startNanos = 0;
+        }
+        try {
+            if (lineReader != null)
+                lineReader.close();
+            else if (fileIn != null)
+                fileIn.close();
+        } finally {
+            // closing the stream over a mapped file leaves the file open
+            if (mappedReader != null) {
+                mappedReader.close();
+                mappedReader = null;
+            }
+            if (decompressor != null) {
+                CodecPool.returnDecompressor(decompressor);
+                decompressor = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.conf.Configuration;
+import org.pratyush.util.LatencyHistogram;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the record readers of one source stage in this JVM.
+ * <p>
+ * Hadoop record readers have no access to the stage metrics, so readers add their counts here and the stage, which
+ * runs in the same executor, drains them into its metrics when it flushes. Readers keep running totals in plain fields
+ * and only add them every few thousand records and when a split is closed.
+ */
+public final class ReaderMetrics {
+    private static final ConcurrentMap<String, ReaderMetrics> stages = new ConcurrentHashMap<>();
+
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder headerRowsSkipped = new LongAdder();
+    private final LongAdder splitsRead = new LongAdder();
+    private final LongAdder splitMillis = new LongAdder();
+    private final LatencyHistogram splitTime = new LatencyHistogram();
+
+    private ReaderMetrics() {
+    }
+
+    public static ReaderMetrics forStage(String stageName) {
+        return stages.computeIfAbsent(stageName, name -> new ReaderMetrics());
+    }
+
+    /**
+     * Metrics of the stage set with {@link CsvInputFormat#setMetricsStage}, {@code null} if none is set.
+     */
+    @Nullable
+    public static ReaderMetrics fromConfiguration(Configuration conf) {
+        String stageName = conf.get(CsvInputFormat.METRICS_STAGE);
+        return stageName == null ? null : forStage(stageName);
+    }
+
+    public void addRows(long rows, long bytes) {
+        rowsRead.add(rows);
+        bytesRead.add(bytes);
+    }
+
+    public void addHeaderRowsSkipped(long rows) {
+        headerRowsSkipped.add(rows);
+    }
+
+    public void addSplit(long millis) {
+        splitsRead.increment();
+        splitMillis.add(millis);
+        splitTime.record(millis);
+    }
+
+    public long drainRowsRead() {
+        return rowsRead.sumThenReset();
+    }
+
+    public long drainBytesRead() {
+        return bytesRead.sumThenReset();
+    }
+
+    public long drainHeaderRowsSkipped() {
+        return headerRowsSkipped.sumThenReset();
+    }
+
+    public long drainSplitsRead() {
+        return splitsRead.sumThenReset();
+    }
+
+    public long drainSplitMillis() {
+        return splitMillis.sumThenReset();
+    }
+
+    /**
+     * Wall time of every split from opening to closing its reader.
+     */
+    public LatencyHistogram getSplitTime() {
+        return splitTime;
+    }
+}
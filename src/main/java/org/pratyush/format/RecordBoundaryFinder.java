@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.io.Text;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Finds the first record boundary after an arbitrary byte offset of a CSV file.
+ * <p>
+ * Whether the offset lies inside a quoted field can not be known without reading the file from the start, so the
+ * bytes that follow are parsed twice, once assuming the offset is outside of quotes and once assuming it is inside.
+ * A hypothesis is rejected as soon as it runs into a quote that is invalid under RFC 4180. After the inference
+ * window the surviving hypothesis is used, if both survive (e.g. no quotes at all) or both are rejected (stray quotes
+ * in the data) the offset is assumed to be outside of quotes.
+ */
+public final class RecordBoundaryFinder {
+    static final int INFERENCE_WINDOW = 64 * 1024;
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte QUOTE = '"';
+
+    private RecordBoundaryFinder() {
+    }
+
+    /**
+     * Reads from the current position of {@code in} until the start of the next record is known.
+     *
+     * @return number of bytes between the current position and the start of the next record, -1 if no record
+     * starts before the end of the stream
+     */
+    public static long findRecordStart(InputStream in, byte[] delimiter, boolean quoteAware) throws IOException {
+        byte[] window = new byte[INFERENCE_WINDOW];
+        int windowLength = 0;
+        int read;
+        while (windowLength < window.length && (read = in.read(window, windowLength, window.length - windowLength)) >= 0) {
+            windowLength += read;
+        }
+
+        Hypothesis chosen;
+        if (quoteAware) {
+            Hypothesis outside = new Hypothesis(Hypothesis.FIELD_START, delimiter);
+            Hypothesis inside = new Hypothesis(Hypothesis.QUOTED, delimiter);
+            for (int i = 0; i < windowLength; i++) {
+                outside.feed(window[i], i);
+                inside.feed(window[i], i);
+            }
+            chosen = !outside.alive && inside.alive ? inside : outside;
+        } else {
+            chosen = new Hypothesis(Hypothesis.UNQUOTED, delimiter);
+            chosen.quoteAware = false;
+            for (int i = 0; i < windowLength && chosen.boundary < 0; i++) {
+                chosen.feed(window[i], i);
+            }
+        }
+        if (chosen.boundary >= 0)
+            return chosen.boundary;
+
+        // record spans beyond the window, the chosen hypothesis keeps scanning leniently
+        long pos = windowLength;
+        byte[] buffer = window;
+        while ((read = in.read(buffer)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                chosen.feed(buffer[i], pos + i);
+                if (chosen.boundary >= 0)
+                    return chosen.boundary;
+            }
+            pos += read;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the end of the last complete record in {@code [start, end)} by reading the records forward from
+     * {@code start}, used to cut a file that is still being appended to. Quotes are followed like the record reader
+     * does, so a line break inside a quoted field never ends the range. A record that is still open at {@code end},
+     * without a line break or inside quotes, only counts as complete if {@code endIsRecordEnd}, e.g. because the file
+     * has not changed since it was last read.
+     *
+     * @param in stream positioned at {@code start}
+     * @return offset just after the last complete record, {@code start} if the range has none
+     */
+    public static long findLastRecordEnd(InputStream in, long start, long end, byte[] delimiter, boolean quoteAware,
+                                         boolean endIsRecordEnd) throws IOException {
+        CsvLineReader lineReader = new CsvLineReader(in, delimiter, quoteAware);
+        Text record = new Text();
+        long pos = start;
+        int consumed;
+        while (pos < end && (consumed = lineReader.readRecord(record)) > 0) {
+            // the stream may already hold bytes appended after end
+            if (pos + consumed > end || !lineReader.isTerminated() && !endIsRecordEnd)
+                break;
+            pos += consumed;
+        }
+        return pos;
+    }
+
+    private static final class Hypothesis {
+        static final int FIELD_START = 0;
+        static final int UNQUOTED = 1;
+        static final int QUOTED = 2;
+        static final int QUOTE_IN_QUOTED = 3;
+
+        private final byte delimiterFirst;
+        private final byte delimiterLast;
+        private boolean quoteAware = true;
+        private int state;
+        private boolean alive = true;
+        private long boundary = -1;
+
+        Hypothesis(int state, byte[] delimiter) {
+            this.state = state;
+            this.delimiterFirst = delimiter[0];
+            this.delimiterLast = delimiter[delimiter.length - 1];
+        }
+
+        void feed(byte b, long pos) {
+            if (!quoteAware) {
+                if (b == NEWLINE)
+                    recordEnd(pos);
+                return;
+            }
+            switch (state) {
+                case QUOTED:
+                    if (b == QUOTE)
+                        state = QUOTE_IN_QUOTED;
+                    return;
+                case QUOTE_IN_QUOTED:
+                    if (b == QUOTE) {
+                        state = QUOTED;
+                    } else if (b == NEWLINE) {
+                        recordEnd(pos);
+                    } else if (b == delimiterLast) {
+                        state = FIELD_START;
+                    } else if (b == delimiterFirst || b == CARRIAGE_RETURN) {
+                        state = UNQUOTED;
+                    } else {
+                        // a closing quote must be followed by a delimiter or the end of the record
+                        alive = false;
+                        state = UNQUOTED;
+                    }
+                    return;
+                case FIELD_START:
+                    if (b == QUOTE) {
+                        state = QUOTED;
+                        return;
+                    }
+                    break;
+                default:
+                    if (b == QUOTE) {
+                        // a quote may only open a field
+                        alive = false;
+                        return;
+                    }
+                    break;
+            }
+            if (b == NEWLINE) {
+                recordEnd(pos);
+            } else {
+                state = b == delimiterLast || b == CARRIAGE_RETURN && state == FIELD_START ? FIELD_START : UNQUOTED;
+            }
+        }
+
+        private void recordEnd(long pos) {
+            if (boundary < 0)
+                boundary = pos + 1;
+            state = FIELD_START;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Records what is read from a stream that can not seek, so the stream can later be rewound to any recorded
+ * position. Used to look for the first record of a compressed split and then read from that record on.
+ * <p>
+ * Every read is passed to the underlying stream as a single read, which keeps block aware positions of split
+ * compression streams accurate.
+ */
+class ReplayInputStream extends InputStream {
+    private final InputStream in;
+    private byte[] recorded = new byte[64 * 1024];
+    private int recordedLength;
+    private int replayPos = -1;
+
+    ReplayInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Stops recording, the next reads return the recorded bytes starting at {@code position} first.
+     */
+    void replayFrom(long position) {
+        replayPos = (int) Math.min(position, recordedLength);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (replayPos >= 0 && replayPos < recordedLength) {
+            int count = Math.min(length, recordedLength - replayPos);
+            System.arraycopy(recorded, replayPos, buffer, offset, count);
+            replayPos += count;
+            if (replayPos == recordedLength)
+                recorded = null;
+            return count;
+        }
+        int read = in.read(buffer, offset, length);
+        if (replayPos < 0 && read > 0) {
+            if (recordedLength + read > recorded.length)
+                recorded = Arrays.copyOf(recorded, Math.max(recorded.length * 2, recordedLength + read));
+            System.arraycopy(buffer, offset, recorded, recordedLength, read);
+            recordedLength += read;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.io.Text;
+import org.pratyush.util.MappedRangeReader;
+import org.pratyush.util.RangeInputStream;
+import org.pratyush.util.RangeReader;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Sparse index of the records of an uncompressed CSV file: the byte offset of every {@code interval}-th record and the
+ * total number of records, header included.
+ * <p>
+ * The index is built in one pass and kept next to the file as a hidden sidecar, see {@link #getSidecarName(String)}.
+ * It records the size and modification time of the file it was built from and is rebuilt as soon as either changes.
+ * Offsets are held in a {@code long[]} and written as variable length deltas between consecutive offsets, a few bytes
+ * per indexed record.
+ */
+public final class RowIndex {
+    public static final int DEFAULT_INTERVAL = 1000;
+    private static final int MAGIC = 0x52495831;
+    private static final String SIDECAR_SUFFIX = ".rowindex";
+
+    private final long fileSize;
+    private final long modificationTime;
+    private final String delimiter;
+    private final boolean quoteAware;
+    private final int interval;
+    private final long rowCount;
+    // offsets[i] is the start of record i * interval
+    private final long[] offsets;
+
+    private RowIndex(long fileSize, long modificationTime, String delimiter, boolean quoteAware, int interval,
+                     long rowCount, long[] offsets) {
+        this.fileSize = fileSize;
+        this.modificationTime = modificationTime;
+        this.delimiter = delimiter;
+        this.quoteAware = quoteAware;
+        this.interval = interval;
+        this.rowCount = rowCount;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Name of the sidecar of {@code fileName}, in the same directory.
+     */
+    public static String getSidecarName(String fileName) {
+        return "." + fileName + SIDECAR_SUFFIX;
+    }
+
+    /**
+     * Reads all records of {@code reader} once, noting the offset of every {@code interval}-th record.
+     */
+    public static RowIndex build(RangeReader reader, long modificationTime, String delimiter, boolean quoteAware,
+                                 int interval) throws IOException {
+        long[] offsets = new long[64];
+        int offsetCount = 0;
+        long rowCount = 0;
+        long pos = 0;
+        CsvLineReader lineReader = new CsvLineReader(new RangeInputStream(reader, 0),
+                delimiter.getBytes(StandardCharsets.UTF_8), quoteAware);
+        Text record = new Text();
+        int consumed;
+        while ((consumed = lineReader.readRecord(record)) > 0) {
+            if (rowCount % interval == 0) {
+                if (offsetCount == offsets.length)
+                    offsets = Arrays.copyOf(offsets, offsetCount * 2);
+                offsets[offsetCount++] = pos;
+            }
+            rowCount++;
+            pos += consumed;
+        }
+        return new RowIndex(reader.length(), modificationTime, delimiter, quoteAware, interval, rowCount,
+                Arrays.copyOf(offsets, offsetCount));
+    }
+
+    /**
+     * Returns the index in the sidecar of a local file if it is current, otherwise builds it and replaces the sidecar.
+     * A sidecar that can not be written (e.g. read only directory) only costs rebuilding the index on the next run.
+     */
+    public static RowIndex loadOrBuild(String path, long fileSize, long modificationTime, String delimiter,
+                                       boolean quoteAware) throws IOException {
+        Path file = Paths.get(path);
+        Path sidecar = file.resolveSibling(getSidecarName(file.getFileName().toString()));
+        try (InputStream in = Files.newInputStream(sidecar)) {
+            RowIndex index = read(in);
+            if (index != null && index.matches(fileSize, modificationTime, delimiter, quoteAware))
+                return index;
+        } catch (NoSuchFileException e) {
+            // not indexed yet
+        }
+
+        RowIndex index;
+        try (MappedRangeReader reader = new MappedRangeReader(path)) {
+            index = build(reader, modificationTime, delimiter, quoteAware, DEFAULT_INTERVAL);
+        }
+        try {
+            // a temporary file of its own, tasks building the same index at once never write into each other's
+            Path temp = Files.createTempFile(sidecar.getParent(), sidecar.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    index.write(out);
+                }
+                // temporary files are private, the sidecar is as readable as the file, e.g. by the file server
+                try {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+                } catch (UnsupportedOperationException e) {
+                    // not a POSIX file system
+                }
+                Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // the index is still returned, only the sidecar is missing
+        }
+        return index;
+    }
+
+    /**
+     * Whether the index describes a file of this size and modification time, read with the same CSV settings. A
+     * negative {@code modificationTime} (unknown, e.g. over HTTP) only checks the size.
+     */
+    public boolean matches(long fileSize, long modificationTime, String delimiter, boolean quoteAware) {
+        return this.fileSize == fileSize && (modificationTime < 0 || this.modificationTime == modificationTime)
+                && this.delimiter.equals(delimiter) && this.quoteAware == quoteAware;
+    }
+
+    /**
+     * Number of records in the file, including the header and any leading or trailing lines.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Number of the last indexed record at or before {@code row}, reading from its offset and skipping
+     * {@code row - getIndexedRow(row)} records gets to {@code row}.
+     */
+    public long getIndexedRow(long row) {
+        if (offsets.length == 0)
+            return 0;
+        return Math.min(row / interval, offsets.length - 1) * interval;
+    }
+
+    /**
+     * Offset of {@link #getIndexedRow(long)}.
+     */
+    public long getOffset(long row) {
+        return offsets.length == 0 ? 0 : offsets[(int) (getIndexedRow(row) / interval)];
+    }
+
+    /**
+     * Cuts the file on indexed records into ranges of the same number of records, about {@code splitSize} bytes each
+     * on average.
+     *
+     * @return boundaries from 0 to the file size, consecutive pairs form a range
+     */
+    public long[] getSplitBoundaries(long splitSize) {
+        if (rowCount == 0 || fileSize <= splitSize)
+            return new long[]{0, fileSize};
+        long rowsPerSplit = (long) Math.ceil((double) rowCount * splitSize / fileSize);
+        long step = Math.max(1, rowsPerSplit / interval);
+        int cuts = (int) ((offsets.length - 1) / step);
+        long[] boundaries = new long[cuts + 2];
+        for (int i = 1; i <= cuts; i++) {
+            boundaries[i] = offsets[(int) (i * step)];
+        }
+        boundaries[cuts + 1] = fileSize;
+        return boundaries;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeLong(fileSize);
+        data.writeLong(modificationTime);
+        data.writeUTF(delimiter);
+        data.writeBoolean(quoteAware);
+        data.writeInt(interval);
+        data.writeLong(rowCount);
+        data.writeInt(offsets.length);
+        long previous = 0;
+        for (long offset : offsets) {
+            writeVarLong(data, offset - previous);
+            previous = offset;
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads an index written by {@link #write(OutputStream)}, {@code null} if the stream holds something else or is
+     * truncated.
+     */
+    @Nullable
+    public static RowIndex read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (data.readInt() != MAGIC)
+                return null;
+            long fileSize = data.readLong();
+            long modificationTime = data.readLong();
+            String delimiter = data.readUTF();
+            boolean quoteAware = data.readBoolean();
+            int interval = data.readInt();
+            long rowCount = data.readLong();
+            int offsetCount = data.readInt();
+            if (interval <= 0 || offsetCount < 0 || offsetCount != (rowCount + interval - 1) / interval)
+                return null;
+            long[] offsets = new long[offsetCount];
+            long offset = 0;
+            for (int i = 0; i < offsetCount; i++) {
+                offset += readVarLong(data);
+                offsets[i] = offset;
+            }
+            return new RowIndex(fileSize, modificationTime, delimiter, quoteAware, interval, rowCount, offsets);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed row index.");
+    }
+}
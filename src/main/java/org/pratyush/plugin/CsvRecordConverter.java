@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.plugin;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.pratyush.util.CsvTokenizer;
+import org.pratyush.util.FieldParser;
+import org.pratyush.util.RowFilter;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Turns the bytes of a CSV record into a {@link StructuredRecord} of the output schema. Field types are resolved
+ * once, so converting a record only tokenizes it and parses each field with {@link FieldParser}.
+ * <p>
+ * Output fields can be mapped to any subset of the CSV columns, columns that are not mapped are skipped by the
+ * tokenizer and never decoded. An optional {@link RowFilter} is checked on the tokenized fields before the record is
+ * built.
+ * <p>
+ * Malformed records do not throw: {@link #convert} returns {@code null} and {@link #getError()} tells why, so a feed
+ * with many bad rows costs no more than one with rejected rows.
+ */
+public class CsvRecordConverter {
+    private static final int STRING = 0;
+    private static final int BOOLEAN = 1;
+    private static final int INT = 2;
+    private static final int LONG = 3;
+    private static final int FLOAT = 4;
+    private static final int DOUBLE = 5;
+    private static final int DATE = 6;
+    private static final int TIMESTAMP = 7;
+    private static final Object INVALID = new Object();
+
+    private final Schema schema;
+    private final String[] fieldNames;
+    private final int[] columnIndexes;
+    private final int[] fieldTypes;
+    private final boolean[] nullable;
+    private final CsvTokenizer tokenizer;
+    private final FieldParser parser = new FieldParser();
+    private final RowFilter filter;
+    private final int fieldCount;
+    private final int requiredFields;
+    private String error;
+
+    /**
+     * @param columnIndexes CSV column of every output field, {@code null} to map the fields to the columns in order
+     * @param filter filter bound to the CSV header, {@code null} to keep all records
+     * @param fieldCount number of fields every record must have, 0 to only require the mapped columns
+     */
+    public CsvRecordConverter(Schema schema, String delimiter, @Nullable int[] columnIndexes,
+                              @Nullable RowFilter filter, int fieldCount) {
+        this.schema = schema;
+        this.tokenizer = new CsvTokenizer(delimiter);
+        this.filter = filter;
+        List<Schema.Field> fields = schema.getFields();
+        this.columnIndexes = new int[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            this.columnIndexes[i] = columnIndexes == null ? i : columnIndexes[i];
+        }
+        int[] filterColumns = filter == null ? new int[0] : filter.getColumns();
+        int columnCount = 0;
+        for (int column : this.columnIndexes) {
+            columnCount = Math.max(columnCount, column + 1);
+        }
+        for (int column : filterColumns) {
+            columnCount = Math.max(columnCount, column + 1);
+        }
+        this.fieldCount = fieldCount;
+        this.requiredFields = Math.max(columnCount, fieldCount);
+        boolean[] selected = new boolean[requiredFields];
+        for (int column : this.columnIndexes) {
+            selected[column] = true;
+        }
+        for (int column : filterColumns) {
+            selected[column] = true;
+        }
+        tokenizer.setSelectedFields(selected);
+
+        fieldNames = new String[fields.size()];
+        fieldTypes = new int[fields.size()];
+        nullable = new boolean[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Schema.Field field = fields.get(i);
+            Schema fieldSchema = field.getSchema();
+            nullable[i] = fieldSchema.isNullable();
+            fieldNames[i] = field.getName();
+            fieldTypes[i] = getFieldType(field.getName(), nullable[i] ? fieldSchema.getNonNullable() : fieldSchema);
+        }
+    }
+
+    private static int getFieldType(String name, Schema fieldSchema) {
+        Schema.LogicalType logicalType = fieldSchema.getLogicalType();
+        if (logicalType == Schema.LogicalType.DATE)
+            return DATE;
+        if (logicalType == Schema.LogicalType.TIMESTAMP_MICROS)
+            return TIMESTAMP;
+        if (logicalType != null)
+            throw new IllegalArgumentException("Field '" + name + "' has unsupported type " + logicalType);
+        switch (fieldSchema.getType()) {
+            case STRING:
+                return STRING;
+            case BOOLEAN:
+                return BOOLEAN;
+            case INT:
+                return INT;
+            case LONG:
+                return LONG;
+            case FLOAT:
+                return FLOAT;
+            case DOUBLE:
+                return DOUBLE;
+            default:
+                throw new IllegalArgumentException("Field '" + name + "' has unsupported type " + fieldSchema.getType());
+        }
+    }
+
+    /**
+     * @return the record, {@code null} if it is rejected by the filter or malformed, see {@link #getError()}
+     */
+    @Nullable
+    public StructuredRecord convert(byte[] bytes, int length) {
+        error = null;
+        int found = tokenizer.tokenize(bytes, length);
+        if (found < requiredFields || (fieldCount > 0 && tokenizer.hasMoreFields())) {
+            error = "Expected " + (fieldCount > 0 ? fieldCount : "at least " + requiredFields) + " fields but found "
+                    + (found < requiredFields ? String.valueOf(found) : "more");
+            return null;
+        }
+        if (filter != null && !filter.test(tokenizer))
+            return null;
+        StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+        for (int idx = 0; idx < fieldNames.length; idx++) {
+            Object value = getValue(idx);
+            if (value == INVALID)
+                return null;
+            builder.set(fieldNames[idx], value);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Why the last record passed to {@link #convert} is malformed, {@code null} if it was converted or filtered out.
+     */
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    private Object getValue(int idx) {
+        int column = columnIndexes[idx];
+        byte[] fieldBytes = tokenizer.getFieldBytes(column);
+        int start = tokenizer.getFieldStart(column);
+        int length = tokenizer.getFieldLength(column);
+        int type = fieldTypes[idx];
+        if (length == 0 && type != STRING && nullable[idx])
+            return null;
+
+        boolean valid;
+        switch (type) {
+            case STRING:
+                return tokenizer.getString(column);
+            case BOOLEAN:
+                valid = parser.tryParseBoolean(fieldBytes, start, length);
+                return valid ? parser.getBooleanValue() : invalid(idx);
+            case INT:
+                valid = parser.tryParseInt(fieldBytes, start, length);
+                return valid ? (int) parser.getLongValue() : invalid(idx);
+            case LONG:
+                valid = parser.tryParseLong(fieldBytes, start, length);
+                return valid ? parser.getLongValue() : invalid(idx);
+            case FLOAT:
+                valid = parser.tryParseDouble(fieldBytes, start, length);
+                return valid ? (float) parser.getDoubleValue() : invalid(idx);
+            case DOUBLE:
+                valid = parser.tryParseDouble(fieldBytes, start, length);
+                return valid ? parser.getDoubleValue() : invalid(idx);
+            case DATE:
+                valid = parser.tryParseDate(fieldBytes, start, length);
+                return valid ? (int) parser.getLongValue() : invalid(idx);
+            default:
+                valid = parser.tryParseTimestamp(fieldBytes, start, length);
+                return valid ? parser.getLongValue() : invalid(idx);
+        }
+    }
+
+    private Object invalid(int idx) {
+        error = "Value '" + tokenizer.getString(columnIndexes[idx]) + "' of field '" + fieldNames[idx]
+                + "' is not of the expected type.";
+        return INVALID;
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.pratyush.plugin;
 
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.cdap.cdap.api.annotation.Description;
@@ -27,42 +29,111 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
 import io.cdap.cdap.etl.api.Emitter;
 import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.cdap.etl.api.InvalidEntry;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.StageMetrics;
+import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
 import io.cdap.cdap.etl.api.batch.BatchSource;
 import io.cdap.cdap.etl.api.batch.BatchSourceContext;
 import io.cdap.plugin.common.SourceInputFormatProvider;
 import io.cdap.plugin.common.batch.JobUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.pratyush.connector.HttpRangeReader;
+import org.pratyush.format.CodecDetector;
+import org.pratyush.format.CsvInputFormat;
+import org.pratyush.format.CsvLineReader;
+import org.pratyush.format.CsvRecord;
+import org.pratyush.format.ReaderMetrics;
+import org.pratyush.format.RecordBoundaryFinder;
+import org.pratyush.format.RowIndex;
+import org.pratyush.util.CheckpointState;
 import org.pratyush.util.CsvHelper;
+import org.pratyush.util.CsvSchemaInferrer;
+import org.pratyush.util.LatencyHistogram;
+import org.pratyush.util.MappedRangeReader;
+import org.pratyush.util.RangeInputStream;
+import org.pratyush.util.RangeReader;
+import org.pratyush.util.RowFilter;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Plugin(type = BatchSource.PLUGIN_TYPE)
 @Name(LocalFileBatchSource.NAME)
 @Description("Reads data from Local File, generates schemas for csv only.")
-public class LocalFileBatchSource extends BatchSource<LongWritable, Text, StructuredRecord> {
+public class LocalFileBatchSource extends BatchSource<LongWritable, Object, StructuredRecord> {
 //TODO CHECK ABSTRACT STYLE UNDER FORMATS
     public static final String NAME = "LocalFile";
+    public static final String SCHEMA_ARGUMENT_PREFIX = "localfile.schema.";
+    public static final String HEADER_ARGUMENT_PREFIX = "localfile.header.";
+    public static final String STATE_ARGUMENT_PREFIX = "localfile.state.";
+    public static final String METRIC_ROWS_SCANNED = "rows.scanned";
+    public static final String METRIC_ROWS_EMITTED = "rows.emitted";
+    public static final String METRIC_ROWS_READ = "rows.read";
+    public static final String METRIC_BYTES_READ = "bytes.read";
+    public static final String METRIC_ROWS_MALFORMED = "rows.malformed";
+    public static final String METRIC_HEADER_ROWS_SKIPPED = "rows.header.skipped";
+    public static final String METRIC_SPLITS_READ = "splits.read";
+    public static final String METRIC_SPLIT_TIME = "split.time.ms";
+    public static final int MALFORMED_ROW_ERROR_CODE = 400;
+    private static final int METRICS_FLUSH_INTERVAL = 10000;
+    private static final Gson GSON = new Gson();
+    // the serialized config ends up in the job configuration, the authorization header is a secret
+    private static final Gson CONFIG_GSON = new GsonBuilder().setExclusionStrategies(new ExclusionStrategy() {
+        @Override
+        public boolean shouldSkipField(FieldAttributes field) {
+            return field.getDeclaringClass() == LocalFilePluginConfig.class && field.getName().equals("authorization");
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> type) {
+            return false;
+        }
+    }).create();
     private final LocalFilePluginConfig pluginConfig;
 
+    /**
+     * Schema of files read without CSV parsing. The offset is the byte offset of the line, in the decompressed data for
+     * compressed files. Lines of bzip2 files, which are split on compression blocks, get the position of their block
+     * in the compressed file, shared by all lines of that block.
+     */
     public static final Schema DEFAULT_SCHEMA;
 
     static {
         DEFAULT_SCHEMA = Schema.recordOf("event", Schema.Field.of("offset", Schema.of(Schema.Type.LONG)), Schema.Field.of("body", Schema.of(Schema.Type.STRING)));
     }
 
+    // resolved once per task in initialize, the per-record path only reads these
+    private Schema outputSchema;
+    private String[] fieldNames;
+    private CsvRecordConverter recordConverter;
+    private String malformedRowPolicy;
+    private long maxMalformedRows;
+    private long malformedRows;
+    // header shared by all input files, read once per instance
+    private String[] header;
+
+    // rows are counted in plain fields and flushed in batches, reader counters are drained at the same time
+    private StageMetrics metrics;
+    private ReaderMetrics readerMetrics;
+    private long rowsScanned;
+    private long rowsEmitted;
+    private long rowsMalformed;
+
     public LocalFileBatchSource(LocalFilePluginConfig pluginConfig) {
         this.pluginConfig = pluginConfig;
     }
@@ -71,29 +142,350 @@ public class LocalFileBatchSource extends BatchSource<LongWritable, Text, Struct
     public void prepareRun(BatchSourceContext batchSourceContext) throws Exception {
         FailureCollector failureCollector = batchSourceContext.getFailureCollector();
         failureCollector.getOrThrowException();
-        setJobConfig(batchSourceContext);
+        Schema schema = resolveSchema(batchSourceContext.getOutputSchema());
+        // header probe results are handed to the executors so they never have to open the file for them
+        String stageName = batchSourceContext.getStageName();
+        batchSourceContext.getArguments().set(getSchemaArgumentName(stageName), schema.toString());
+        if (pluginConfig.getGenerateSchemaToggle())
+            batchSourceContext.getArguments().set(HEADER_ARGUMENT_PREFIX + stageName, GSON.toJson(readHeader()));
+        setJobConfig(batchSourceContext, schema);
     }
 
-    private void setJobConfig(BatchSourceContext batchSourceContext) throws IOException, URISyntaxException {
+    @Override
+    public void initialize(BatchRuntimeContext context) throws Exception {
+        super.initialize(context);
+        metrics = context.getMetrics();
+        readerMetrics = ReaderMetrics.forStage(context.getStageName());
+        Schema schema = pluginConfig.getSchema();
+        if (schema == null)
+            schema = context.getOutputSchema();
+        if (schema == null) {
+            String schemaJson = context.getArguments().get(getSchemaArgumentName(context.getStageName()));
+            schema = schemaJson == null ? generateOutputSchema() : Schema.parseJson(schemaJson);
+        }
+        outputSchema = schema;
+        malformedRowPolicy = pluginConfig.getMalformedRowPolicy();
+        maxMalformedRows = pluginConfig.getMaxMalformedRows();
+        // with the reader engine, records arrive already converted
+        if (pluginConfig.isReaderEngine())
+            return;
+
+        List<Schema.Field> fields = outputSchema.getFields();
+        fieldNames = new String[fields.size()];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldNames[i] = fields.get(i).getName();
+        }
+        if (pluginConfig.getGenerateSchemaToggle()) {
+            String headerJson = context.getArguments().get(HEADER_ARGUMENT_PREFIX + context.getStageName());
+            String[] headerNames = headerJson == null ? readHeader() : GSON.fromJson(headerJson, String[].class);
+            RowFilter filter = null;
+            if (pluginConfig.getFilter() != null) {
+                filter = RowFilter.parse(pluginConfig.getFilter());
+                filter.bind(headerNames);
+            }
+            recordConverter = new CsvRecordConverter(outputSchema, pluginConfig.getDelimiter(),
+                    getColumnIndexes(outputSchema, headerNames), filter, headerNames.length);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flushMetrics();
+        super.destroy();
+    }
+
+    private static String getSchemaArgumentName(String stageName) {
+        return SCHEMA_ARGUMENT_PREFIX + stageName;
+    }
+
+    /**
+     * Reads the header shared by all input files, checking in parallel that every file has the same one.
+     */
+    private String[] readHeader() throws IOException {
+        if (header == null) {
+            header = new CsvHelper().readConsistentHeader(listInputFiles(), createJob().getConfiguration(),
+                    pluginConfig.getDelimiter(), pluginConfig.getSkipLeadingLines());
+        }
+        return header;
+    }
+
+    private List<Path> listInputFiles() throws IOException {
+        if (pluginConfig.isRemote())
+            return Collections.singletonList(new Path(pluginConfig.getFilePath()));
+        List<Path> files = new ArrayList<>();
+        for (FileStatus status : CsvInputFormat.listInputFiles(createJob())) {
+            files.add(status.getPath());
+        }
+        if (files.isEmpty())
+            throw new IOException("No input files found at '" + pluginConfig.getFilePath() + "'.");
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Maps every output field to the CSV column of the same name, so a trimmed or reordered schema only reads the
+     * columns it needs. Returns {@code null} if the fields do not all match a column, they are then read in order.
+     */
+    @Nullable
+    static int[] getColumnIndexes(Schema schema, String[] headerNames) {
+        Map<String, Integer> headerIndexes = new HashMap<>();
+        for (int i = headerNames.length - 1; i >= 0; i--) {
+            headerIndexes.put(headerNames[i], i);
+        }
+        List<Schema.Field> fields = schema.getFields();
+        int[] columnIndexes = new int[fields.size()];
+        for (int i = 0; i < columnIndexes.length; i++) {
+            Integer column = headerIndexes.get(fields.get(i).getName());
+            if (column == null)
+                return null;
+            columnIndexes[i] = column;
+        }
+        return columnIndexes;
+    }
+
+    private Job createJob() throws IOException {
         Job hadoopJob = JobUtils.createInstance();
-        Gson gson = new GsonBuilder().create();
+        if (pluginConfig.isRemote()) {
+            CsvInputFormat.setRemoteInputPath(hadoopJob, pluginConfig.getFilePath(), pluginConfig.getAuthorization());
+            return hadoopJob;
+        }
+        // parsed as a Path rather than a URI, so glob characters like { and [ are accepted
+        CsvInputFormat.addInputPath(hadoopJob, new Path(pluginConfig.getFilePath()));
+        CsvInputFormat.setRecursive(hadoopJob, pluginConfig.isRecursive());
+        return hadoopJob;
+    }
+
+    private void setJobConfig(BatchSourceContext batchSourceContext, Schema schema) throws IOException {
+        Job hadoopJob = createJob();
         Configuration jobConfiguration = hadoopJob.getConfiguration();
-        jobConfiguration.set(pluginConfig.getReferenceName(), gson.toJson(pluginConfig));
+        jobConfiguration.set(pluginConfig.getReferenceName(), CONFIG_GSON.toJson(pluginConfig));
 
-        TextInputFormat.addInputPath(hadoopJob, new Path(new URI(pluginConfig.getFilePath())));
-        SourceInputFormatProvider inputFormat = new SourceInputFormatProvider(TextInputFormat.class, jobConfiguration);
+        CsvInputFormat.setDelimiter(hadoopJob, pluginConfig.getDelimiter());
+        CsvInputFormat.setMetricsStage(hadoopJob, batchSourceContext.getStageName());
+        // plain text files are read line by line, quotes only matter for CSV
+        CsvInputFormat.setQuoteAware(hadoopJob, pluginConfig.getGenerateSchemaToggle());
+        CsvInputFormat.setSplitSize(hadoopJob, pluginConfig.getMaxSplitSize());
+        // header is dropped per file by the record reader
+        int headerLines = pluginConfig.includeHeaders() ? 0 : 1;
+        CsvInputFormat.setSkipLeadingLines(hadoopJob, pluginConfig.getSkipLeadingLines() + headerLines);
+        CsvInputFormat.setSkipTrailingLines(hadoopJob, pluginConfig.getSkipTrailingLines());
+        long recordLimit = getRecordLimit(batchSourceContext);
+        if (recordLimit > 0)
+            planBoundedRead(hadoopJob, recordLimit);
+        else if (pluginConfig.getStateFile() != null)
+            planIncrementalRead(hadoopJob, batchSourceContext);
+        else if (pluginConfig.useRowIndex())
+            planIndexedRead(hadoopJob);
+        SourceInputFormatProvider inputFormat;
+        if (pluginConfig.isReaderEngine()) {
+            String[] headerNames = pluginConfig.getGenerateSchemaToggle() ? readHeader() : null;
+            StructuredRecordInputFormat.setRecordSchema(hadoopJob, schema, headerNames, pluginConfig.getFilter());
+            inputFormat = new SourceInputFormatProvider(StructuredRecordInputFormat.class, jobConfiguration);
+        } else {
+            inputFormat = new SourceInputFormatProvider(CsvInputFormat.class, jobConfiguration);
+        }
 
         batchSourceContext.setInput(Input.of(pluginConfig.getReferenceName(), inputFormat));
     }
 
-    private Schema getOutputSchema() throws IOException {
-        if (pluginConfig.getGenerateSchemaToggle()) {
-            try (BufferedReader bufferedReader = new BufferedReader(new FileReader(pluginConfig.getFilePath()))) {
-                CsvHelper csvHelper = new CsvHelper();
-                return csvHelper.generateSchemaFromCsv(bufferedReader.readLine(), pluginConfig.getDelimiter());
+    /**
+     * Restricts the job to the files that are new or changed and to the bytes appended to files read before. The new
+     * state is handed to {@link #onRunFinish(boolean, BatchSourceContext)} through the runtime arguments, so it is only
+     * committed if the run succeeds.
+     */
+    private void planIncrementalRead(Job hadoopJob, BatchSourceContext batchSourceContext) throws IOException {
+        CheckpointState previous = CheckpointState.load(pluginConfig.getStateFile());
+        CheckpointState next = new CheckpointState();
+        Configuration conf = hadoopJob.getConfiguration();
+        byte[] delimiter = pluginConfig.getDelimiter().getBytes(StandardCharsets.UTF_8);
+        CsvInputFormat.setRangesOnly(hadoopJob);
+        for (FileStatus file : CsvInputFormat.listInputFiles(hadoopJob)) {
+            String path = file.getPath().toString();
+            CheckpointState.Entry entry = previous.get(path);
+            boolean unchanged = entry != null && file.getLen() == entry.getSize()
+                    && file.getModificationTime() == entry.getModificationTime();
+            boolean appended = entry != null && file.getLen() > entry.getSize();
+
+            long start;
+            long end;
+            if (CodecDetector.getCodec(conf, file.getPath()) != null) {
+                // compressed files can not be read from an offset, they are read again as a whole once they change
+                start = unchanged ? file.getLen() : 0;
+                end = file.getLen();
+            } else {
+                start = unchanged || appended ? entry.getOffset() : 0;
+                // a record that is still being written is left for the next run, once the file stays unchanged for
+                // a run its last record is complete even without a line break
+                try (FSDataInputStream in = file.getPath().getFileSystem(conf).open(file.getPath())) {
+                    in.seek(start);
+                    end = RecordBoundaryFinder.findLastRecordEnd(in, start, file.getLen(), delimiter,
+                            pluginConfig.getGenerateSchemaToggle(), unchanged);
+                }
             }
-        } else
+            if (end > start)
+                CsvInputFormat.setRange(hadoopJob, file.getPath(), start, end);
+            next.put(new CheckpointState.Entry(path, file.getLen(), file.getModificationTime(), end));
+        }
+        batchSourceContext.getArguments().set(STATE_ARGUMENT_PREFIX + batchSourceContext.getStageName(), next.toJson());
+    }
+
+    /**
+     * Configured max records, in preview capped to the number of records the preview is configured to show. -1 if the
+     * whole input is read.
+     */
+    private long getRecordLimit(BatchSourceContext batchSourceContext) {
+        Long maxRecords = pluginConfig.getMaxRecords();
+        if (batchSourceContext.isPreviewEnabled()) {
+            long previewRecords = batchSourceContext.getMaxPreviewRecords();
+            return maxRecords == null ? previewRecords : Math.min(maxRecords, previewRecords);
+        }
+        return maxRecords == null ? -1 : maxRecords;
+    }
+
+    /**
+     * Plans only the start of the input that holds the first {@code recordLimit} records, so a preview of a huge file
+     * reads as much as one of a small file. Local files are counted from their start in input order and read up to
+     * the record that reaches the limit, files after it are not read at all. Compressed and remote files are read by a
+     * single split from their start that stops at the limit. Preview runs never plan an incremental read, so they do
+     * not move the state forward.
+     */
+    private void planBoundedRead(Job hadoopJob, long recordLimit) throws IOException {
+        Configuration conf = hadoopJob.getConfiguration();
+        if (pluginConfig.isRemote()) {
+            CsvInputFormat.setRecordLimit(hadoopJob, new Path(pluginConfig.getFilePath()), recordLimit);
+            return;
+        }
+        CsvInputFormat.setRangesOnly(hadoopJob);
+        List<FileStatus> files = new ArrayList<>(CsvInputFormat.listInputFiles(hadoopJob));
+        files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+        int leadingLines = pluginConfig.getSkipLeadingLines() + (pluginConfig.includeHeaders() ? 0 : 1);
+        int trailingLines = pluginConfig.getSkipTrailingLines();
+        byte[] delimiter = pluginConfig.getDelimiter().getBytes(StandardCharsets.UTF_8);
+        long remaining = recordLimit;
+        for (FileStatus file : files) {
+            if (remaining <= 0)
+                break;
+            Path path = file.getPath();
+            // the record that reaches the limit, it is only data if at least trailingLines records follow it
+            long cut = leadingLines + remaining;
+            long records = 0;
+            long end = 0;
+            long cutEnd = 0;
+            boolean compressed = CodecDetector.getCodec(conf, path) != null;
+            try (RangeReader reader = compressed ? null : new MappedRangeReader(path.toUri().getPath());
+                 InputStream in = compressed ? CodecDetector.open(conf, path) : new RangeInputStream(reader, 0)) {
+                CsvLineReader lineReader = new CsvLineReader(in, delimiter, pluginConfig.getGenerateSchemaToggle());
+                Text record = new Text();
+                int consumed;
+                while (records < cut + trailingLines && (consumed = lineReader.readRecord(record)) > 0) {
+                    records++;
+                    end += consumed;
+                    if (records == cut)
+                        cutEnd = end;
+                }
+            }
+            long dataRecords;
+            if (records < cut + trailingLines) {
+                // the file ends before the limit and its footer, it is read to its end and the reader drops the footer
+                dataRecords = Math.max(0, records - leadingLines - trailingLines);
+            } else {
+                dataRecords = remaining;
+                end = cutEnd;
+            }
+            if (compressed) {
+                CsvInputFormat.setRange(hadoopJob, path, 0, file.getLen());
+                CsvInputFormat.setRecordLimit(hadoopJob, path, remaining);
+            } else {
+                CsvInputFormat.setRange(hadoopJob, path, 0, end);
+            }
+            remaining -= dataRecords;
+        }
+    }
+
+    /**
+     * Cuts every uncompressed file at the records of its {@link RowIndex}, so all splits of a file hold the same number
+     * of rows. Compressed files are read as a whole.
+     */
+    private void planIndexedRead(Job hadoopJob) throws IOException {
+        Configuration conf = hadoopJob.getConfiguration();
+        CsvInputFormat.setRangesOnly(hadoopJob);
+        for (FileStatus file : CsvInputFormat.listInputFiles(hadoopJob)) {
+            if (CodecDetector.getCodec(conf, file.getPath()) != null) {
+                CsvInputFormat.setRange(hadoopJob, file.getPath(), 0, file.getLen());
+                continue;
+            }
+            RowIndex index = RowIndex.loadOrBuild(file.getPath().toUri().getPath(), file.getLen(),
+                    file.getModificationTime(), pluginConfig.getDelimiter(), pluginConfig.getGenerateSchemaToggle());
+            CsvInputFormat.setRangeBoundaries(hadoopJob, file.getPath(),
+                    index.getSplitBoundaries(pluginConfig.getMaxSplitSize()));
+        }
+    }
+
+    @Override
+    public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+        super.onRunFinish(succeeded, context);
+        String stateJson = context.getArguments().get(STATE_ARGUMENT_PREFIX + context.getStageName());
+        if (!succeeded || stateJson == null)
+            return;
+        try {
+            CheckpointState.fromJson(stateJson).save(pluginConfig.getStateFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to commit incremental state to " + pluginConfig.getStateFile(), e);
+        }
+    }
+
+    private Schema resolveSchema(@Nullable Schema pipelineSchema) throws IOException {
+        Schema configuredSchema = pluginConfig.getSchema();
+        if (configuredSchema != null)
+            return configuredSchema;
+        if (pipelineSchema != null)
+            return pipelineSchema;
+        return generateOutputSchema();
+    }
+
+    private Schema generateOutputSchema() throws IOException {
+        if (!pluginConfig.getGenerateSchemaToggle())
             return DEFAULT_SCHEMA;
+
+        String[] headerNames = readHeader();
+        // header values are emitted as records when included, which only a string schema can hold
+        if (!pluginConfig.inferTypes() || pluginConfig.includeHeaders())
+            return projectSchema(new CsvHelper().generateSchemaFromHeader(headerNames));
+
+        // all files share the header, types are sampled from the first one
+        Schema schema;
+        Path path = listInputFiles().get(0);
+        Configuration conf = createJob().getConfiguration();
+        if (CodecDetector.getCodec(conf, path) != null) {
+            // compressed files can not be read at random positions, the sample is taken from the head of the file
+            try (InputStream in = CodecDetector.open(conf, path)) {
+                schema = new CsvSchemaInferrer(pluginConfig.getDelimiter(), pluginConfig.getSampleSize(), 1)
+                        .infer(in, pluginConfig.getSkipLeadingLines());
+            }
+        } else {
+            try (RangeReader reader = pluginConfig.isRemote()
+                    ? new HttpRangeReader(CsvInputFormat.getHttpHandler(conf), path.toString())
+                    : new MappedRangeReader(path.toUri().getPath())) {
+                CsvSchemaInferrer inferrer = new CsvSchemaInferrer(pluginConfig.getDelimiter(),
+                        pluginConfig.getSampleSize(), CsvSchemaInferrer.DEFAULT_PARALLELISM);
+                schema = inferrer.infer(reader, pluginConfig.getSkipLeadingLines());
+            }
+        }
+        return projectSchema(schema);
+    }
+
+    private Schema projectSchema(Schema schema) {
+        List<String> columns = pluginConfig.getColumns();
+        if (columns.isEmpty())
+            return schema;
+        List<Schema.Field> fields = new ArrayList<>();
+        for (String column : columns) {
+            Schema.Field field = schema.getField(column);
+            if (field == null)
+                throw new IllegalArgumentException("Column '" + column + "' is not part of the CSV header.");
+            fields.add(field);
+        }
+        return Schema.recordOf(schema.getRecordName(), fields);
     }
 
 
@@ -101,43 +493,103 @@ public class LocalFileBatchSource extends BatchSource<LongWritable, Text, Struct
     public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
         FailureCollector failureCollector = pipelineConfigurer.getStageConfigurer().getFailureCollector();
         pluginConfig.validate(pipelineConfigurer.getStageConfigurer().getFailureCollector());
+        failureCollector.getOrThrowException();
+        // a remote file can only be read once the authorization macro is evaluated, the schema is generated at runtime
+        if (pluginConfig.isRemote() && pluginConfig.containsMacro(LocalFilePluginConfig.NAME_AUTHORIZATION)) {
+            pipelineConfigurer.getStageConfigurer().setOutputSchema(pluginConfig.getSchema());
+            return;
+        }
         try {
-            pipelineConfigurer.getStageConfigurer().setOutputSchema(getOutputSchema());
+            pipelineConfigurer.getStageConfigurer().setOutputSchema(resolveSchema(null));
         } catch (IOException e) {
             failureCollector.addFailure(e.getMessage(), null);
             failureCollector.getOrThrowException();
+        } catch (IllegalArgumentException e) {
+            failureCollector.addFailure(e.getMessage(), null).withConfigProperty(LocalFilePluginConfig.NAME_COLUMNS);
+            failureCollector.getOrThrowException();
         }
     }
 
+    /**
+     * Converts a raw record, or with the reader engine only passes on the record built by
+     * {@link StructuredRecordInputFormat}. Rows dropped by the filter inside the reader are not counted as scanned.
+     */
     @Override
-    public void transform(KeyValue<LongWritable, Text> input, Emitter<StructuredRecord> emitter) throws Exception {
-        StructuredRecord.Builder builder = StructuredRecord.builder(getOutputSchema());
+    public void transform(KeyValue<LongWritable, Object> input, Emitter<StructuredRecord> emitter) throws Exception {
+        if (++rowsScanned % METRICS_FLUSH_INTERVAL == 0)
+            flushMetrics();
+
+        Object value = input.getValue();
+        if (value instanceof StructuredRecord) {
+            emitter.emit((StructuredRecord) value);
+        }
 
-        // Skip headers if specified in config
-        if (!pluginConfig.includeHeaders() && input.getKey().get() == 0)
+        else if (value instanceof MalformedRow) {
+            handleMalformedRow((MalformedRow) value, emitter);
             return;
+        }
 
-        if (pluginConfig.getGenerateSchemaToggle())
-            csvTransform(input, builder);
+        else if (pluginConfig.getGenerateSchemaToggle()) {
+            Text text = (Text) value;
+            StructuredRecord record = recordConverter.convert(text.getBytes(), text.getLength());
+            if (record == null) {
+                if (recordConverter.getError() != null) {
+                    handleMalformedRow(new MalformedRow(CsvRecord.fileOf(text), input.getKey().get(),
+                            recordConverter.getError(), text.toString()), emitter);
+                }
+                return;
+            }
+            emitter.emit(record);
+        }
 
         else
-            fileTransform(input, builder);
-
-        emitter.emit(builder.build());
+            emitter.emit(fileTransform(input));
+        rowsEmitted++;
     }
 
-    private void csvTransform(KeyValue<LongWritable, Text> input, StructuredRecord.Builder builder) throws IOException {
-        int idx = 0;
-        String[] valuesSplit = input.getValue().toString().split(pluginConfig.getDelimiter());
-        for (Schema.Field field : getOutputSchema().getFields()) {
-            builder.set(field.getName(), valuesSplit[idx]);
-            idx++;
+    /**
+     * Applies the malformed row policy. Only the failing row throws, skipped and routed rows cost no exception.
+     */
+    private void handleMalformedRow(MalformedRow row, Emitter<StructuredRecord> emitter) {
+        rowsMalformed++;
+        if (LocalFilePluginConfig.POLICY_FAIL.equals(malformedRowPolicy)) {
+            flushMetrics();
+            throw new IllegalArgumentException("Malformed row at " + row);
+        }
+        if (++malformedRows > maxMalformedRows) {
+            flushMetrics();
+            throw new IllegalArgumentException("More than " + maxMalformedRows + " malformed rows, last at " + row);
         }
+        if (LocalFilePluginConfig.POLICY_ROUTE.equals(malformedRowPolicy))
+            emitter.emitError(new InvalidEntry<>(MALFORMED_ROW_ERROR_CODE, row.toString(), row.toRecord()));
     }
 
-    private void fileTransform(KeyValue<LongWritable, Text> input, StructuredRecord.Builder builder) throws IOException {
-        builder.set(getOutputSchema().getFields().get(0).getName(), input.getKey().get());
-        builder.set(getOutputSchema().getFields().get(1).getName(), input.getValue().toString());
+    private StructuredRecord fileTransform(KeyValue<LongWritable, Object> input) {
+        StructuredRecord.Builder builder = StructuredRecord.builder(outputSchema);
+        builder.set(fieldNames[0], input.getKey().get());
+        builder.set(fieldNames[1], input.getValue().toString());
+        return builder.build();
+    }
+
+    private void flushMetrics() {
+        if (metrics == null)
+            return;
+        metrics.count(METRIC_ROWS_SCANNED, (int) rowsScanned);
+        metrics.count(METRIC_ROWS_EMITTED, (int) rowsEmitted);
+        metrics.count(METRIC_ROWS_MALFORMED, (int) rowsMalformed);
+        rowsScanned = 0;
+        rowsEmitted = 0;
+        rowsMalformed = 0;
+
+        metrics.countLong(METRIC_ROWS_READ, readerMetrics.drainRowsRead());
+        metrics.countLong(METRIC_BYTES_READ, readerMetrics.drainBytesRead());
+        metrics.countLong(METRIC_HEADER_ROWS_SKIPPED, readerMetrics.drainHeaderRowsSkipped());
+        metrics.countLong(METRIC_SPLITS_READ, readerMetrics.drainSplitsRead());
+        metrics.countLong(METRIC_SPLIT_TIME, readerMetrics.drainSplitMillis());
+        LatencyHistogram splitTime = readerMetrics.getSplitTime();
+        for (int i = 0; i < splitTime.getBucketCount(); i++) {
+            metrics.countLong(METRIC_SPLIT_TIME + "." + splitTime.getBucketName(i), splitTime.drain(i));
+        }
     }
 
 }
\ No newline at end of file
@@ -17,13 +17,22 @@
 package org.pratyush.plugin;
 
 import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
 import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.plugin.PluginConfig;
 import io.cdap.cdap.etl.api.FailureCollector;
+import org.apache.hadoop.fs.Path;
+import org.pratyush.format.CsvInputFormat;
 import org.pratyush.util.CsvHelper;
+import org.pratyush.util.CsvSchemaInferrer;
+import org.pratyush.util.RowFilter;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class LocalFilePluginConfig extends PluginConfig {
     public static final String NAME_REFERENCE_NAME = "referenceName";
@@ -31,13 +40,35 @@ public class LocalFilePluginConfig extends PluginConfig {
     public static final String NAME_GEN_SCHEMA_TOGGLE = "generateSchemaToggle";
     public static final String NAME_HEADERS_TOGGLE = "headersToggle";
     public static final String NAME_DELIMITER = "delimiter";
+    public static final String NAME_SCHEMA = "schema";
+    public static final String NAME_MAX_SPLIT_SIZE = "maxSplitSize";
+    public static final String NAME_SKIP_LEADING_LINES = "skipLeadingLines";
+    public static final String NAME_SKIP_TRAILING_LINES = "skipTrailingLines";
+    public static final String NAME_INFER_TYPES = "inferTypes";
+    public static final String NAME_SAMPLE_SIZE = "sampleSize";
+    public static final String NAME_COLUMNS = "columns";
+    public static final String NAME_FILTER = "filter";
+    public static final String NAME_RECURSIVE = "recursive";
+    public static final String NAME_STATE_FILE = "stateFile";
+    public static final String NAME_ROW_INDEX = "rowIndex";
+    public static final String NAME_MAX_RECORDS = "maxRecords";
+    public static final String NAME_AUTHORIZATION = "authorization";
+    public static final String NAME_READ_ENGINE = "readEngine";
+    public static final String ENGINE_TRANSFORM = "transform";
+    public static final String ENGINE_READER = "reader";
+    public static final String NAME_MALFORMED_ROW_POLICY = "malformedRowPolicy";
+    public static final String NAME_MAX_MALFORMED_ROWS = "maxMalformedRows";
+    public static final String POLICY_FAIL = "fail";
+    public static final String POLICY_SKIP = "skip";
+    public static final String POLICY_ROUTE = "route";
 
     @Name(NAME_REFERENCE_NAME)
     @Description("This will be used to uniquely identify this source/sink for lineage, annotating metadata, etc.")
     public String referenceName;
 
     @Name(NAME_FILE_PATH)
-    @Description("Enter Local File Path.")
+    @Description("Enter Local File Path. Can also be a directory or a glob such as /data/*.csv, all matched files " +
+            "must share the same header. An http or https URL is read from the HTTP file server.")
     private String filePath;
 
     @Name(NAME_GEN_SCHEMA_TOGGLE)
@@ -52,9 +83,99 @@ public class LocalFilePluginConfig extends PluginConfig {
     @Description("Choose delimiter symbol used in CSV File.")
     private String delimiter;
 
-    private Schema schema;
+    @Name(NAME_SCHEMA)
+    @Description("Output schema. If not set, it is generated from the CSV header or the default schema is used.")
+    @Nullable
+    private String schema;
 
-    public LocalFilePluginConfig(String referenceName, String filePath, Boolean generateSchemaToggle, Boolean headersToggle, String delimiter, Schema schema) {
+    @Name(NAME_MAX_SPLIT_SIZE)
+    @Description("Target size in bytes of each split of an uncompressed file. Defaults to 128 MB.")
+    @Nullable
+    private Long maxSplitSize;
+
+    @Name(NAME_SKIP_LEADING_LINES)
+    @Description("Number of lines to skip at the start of every file, before the header.")
+    @Nullable
+    private Integer skipLeadingLines;
+
+    @Name(NAME_SKIP_TRAILING_LINES)
+    @Description("Number of footer lines to skip at the end of every file.")
+    @Nullable
+    private Integer skipTrailingLines;
+
+    @Name(NAME_INFER_TYPES)
+    @Description("Infer column types from sampled rows when generating the schema. Otherwise, and by default, all "
+            + "columns are strings.")
+    @Nullable
+    private Boolean inferTypes;
+
+    @Name(NAME_SAMPLE_SIZE)
+    @Description("Number of rows sampled across the file to infer column types. Defaults to 1000.")
+    @Nullable
+    private Integer sampleSize;
+
+    @Name(NAME_COLUMNS)
+    @Description("Comma separated CSV columns to read, all other columns are skipped while parsing. " +
+            "If not set, the columns are taken from the output schema field names.")
+    @Nullable
+    private String columns;
+
+    @Name(NAME_FILTER)
+    @Description("Only rows matching this expression are read, e.g. \"age >= 18 AND city IN ('NYC', 'LA')\". " +
+            "Supports = != < <= > >=, IN, IS [NOT] NULL, AND, OR, NOT and parentheses on CSV columns.")
+    @Nullable
+    private String filter;
+
+    @Name(NAME_RECURSIVE)
+    @Description("Read the files of sub directories when the path is a directory.")
+    @Nullable
+    private Boolean recursive;
+
+    @Name(NAME_STATE_FILE)
+    @Description("Local file that keeps track of what has been read. If set, every run only reads new files and the " +
+            "lines appended to files read by earlier runs. The state is only updated when a run succeeds.")
+    @Nullable
+    private String stateFile;
+
+    @Name(NAME_ROW_INDEX)
+    @Description("Keep a row index next to every uncompressed file (a hidden .<file>.rowindex sidecar), rebuilt when " +
+            "the file changes. Splits are then cut on record boundaries with the same number of rows each.")
+    @Nullable
+    private Boolean rowIndex;
+
+    @Name(NAME_MAX_RECORDS)
+    @Description("Read at most this many records from the start of the input, only the part of the files holding " +
+            "them is read. In preview at most the configured preview size is read.")
+    @Nullable
+    private Long maxRecords;
+
+    @Name(NAME_AUTHORIZATION)
+    @Description("Authorization header sent when the file path is an http or https URL, e.g. " +
+            "'Bearer ${secure(api-key)}'.")
+    @Macro
+    @Nullable
+    private String authorization;
+
+    @Name(NAME_READ_ENGINE)
+    @Description("Where rows are turned into records. 'transform' (default) hands every row to the stage as a " +
+            "key/value pair and converts it there, 'reader' converts the rows while each split is read and hands " +
+            "over finished records, filtered rows never leave the reader.")
+    @Nullable
+    private String readEngine;
+
+    @Name(NAME_MALFORMED_ROW_POLICY)
+    @Description("What happens to rows with the wrong number of fields or values that do not match their type. " +
+            "'fail' (default) stops the pipeline at the first one, 'skip' drops them and 'route' sends them to the " +
+            "error output with the file, offset and reason.")
+    @Nullable
+    private String malformedRowPolicy;
+
+    @Name(NAME_MAX_MALFORMED_ROWS)
+    @Description("Number of malformed rows a task skips or routes before the pipeline fails. Unlimited if not set.")
+    @Nullable
+    private Long maxMalformedRows;
+
+    public LocalFilePluginConfig(String referenceName, String filePath, Boolean generateSchemaToggle, Boolean headersToggle, String delimiter, String schema) {
         this.referenceName = referenceName;
         this.filePath = filePath;
         this.generateSchemaToggle = generateSchemaToggle;
@@ -83,14 +204,184 @@ public class LocalFilePluginConfig extends PluginConfig {
         return delimiter;
     }
 
+    public boolean isRecursive() {
+        return recursive != null && recursive;
+    }
+
+    /**
+     * Whether the file is read from the HTTP file server.
+     */
+    public boolean isRemote() {
+        return filePath != null && CsvInputFormat.isRemote(new Path(filePath));
+    }
+
+    @Nullable
+    public String getAuthorization() {
+        return authorization == null || authorization.isEmpty() ? null : authorization;
+    }
+
+    /**
+     * Whether records are built by {@link StructuredRecordInputFormat} rather than in the transform of the stage.
+     */
+    public boolean isReaderEngine() {
+        return ENGINE_READER.equals(readEngine);
+    }
+
+    public String getMalformedRowPolicy() {
+        return malformedRowPolicy == null || malformedRowPolicy.isEmpty() ? POLICY_FAIL : malformedRowPolicy;
+    }
+
+    /**
+     * Malformed rows tolerated per task, {@code Long.MAX_VALUE} if there is no limit.
+     */
+    public long getMaxMalformedRows() {
+        return maxMalformedRows == null ? Long.MAX_VALUE : maxMalformedRows;
+    }
+
+    public boolean useRowIndex() {
+        return rowIndex != null && rowIndex;
+    }
+
+    @Nullable
+    public Long getMaxRecords() {
+        return maxRecords;
+    }
+
+    @Nullable
+    public String getStateFile() {
+        return stateFile == null || stateFile.trim().isEmpty() ? null : stateFile.trim();
+    }
+
+    public long getMaxSplitSize() {
+        return maxSplitSize == null ? CsvInputFormat.DEFAULT_SPLIT_SIZE : maxSplitSize;
+    }
+
+    public int getSkipLeadingLines() {
+        return skipLeadingLines == null ? 0 : skipLeadingLines;
+    }
+
+    public int getSkipTrailingLines() {
+        return skipTrailingLines == null ? 0 : skipTrailingLines;
+    }
+
+    public boolean inferTypes() {
+        return inferTypes != null && inferTypes;
+    }
+
+    public int getSampleSize() {
+        return sampleSize == null ? CsvSchemaInferrer.DEFAULT_SAMPLE_SIZE : sampleSize;
+    }
+
+    public List<String> getColumns() {
+        List<String> columnNames = new ArrayList<>();
+        if (columns == null)
+            return columnNames;
+        for (String column : columns.split(",")) {
+            if (!column.trim().isEmpty())
+                columnNames.add(column.trim());
+        }
+        return columnNames;
+    }
+
+    @Nullable
+    public String getFilter() {
+        return filter == null || filter.trim().isEmpty() ? null : filter;
+    }
+
+    @Nullable
+    public Schema getSchema() {
+        if (schema == null || schema.isEmpty())
+            return null;
+        try {
+            return Schema.parseJson(schema);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid schema: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean isDirectory() {
+        return filePath != null && !isRemote() && new File(new Path(filePath).toUri().getPath()).isDirectory();
+    }
+
     public void validate(FailureCollector failureCollector) {
         CsvHelper csvHelper = new CsvHelper();
-        if (generateSchemaToggle && !csvHelper.isCsvFile(filePath)) {
+        boolean csvInput = csvHelper.isCsvFile(filePath) || isDirectory();
+        if (generateSchemaToggle && !csvInput) {
             failureCollector.addFailure("Can not generate schema.", "File is not of type CSV.");
         }
-        if (includeHeaders() && !csvHelper.isCsvFile(filePath)) {
+        if (includeHeaders() && !csvInput) {
             failureCollector.addFailure("Cannot include Headers", "File is not of type CSV.");
         }
+        if (maxSplitSize != null && maxSplitSize <= 0) {
+            failureCollector.addFailure("Max split size must be greater than 0.", null).withConfigProperty(NAME_MAX_SPLIT_SIZE);
+        }
+        if (getSkipLeadingLines() < 0) {
+            failureCollector.addFailure("Leading lines to skip can not be negative.", null).withConfigProperty(NAME_SKIP_LEADING_LINES);
+        }
+        if (getSkipTrailingLines() < 0) {
+            failureCollector.addFailure("Trailing lines to skip can not be negative.", null).withConfigProperty(NAME_SKIP_TRAILING_LINES);
+        }
+        if (getStateFile() != null && getSkipTrailingLines() > 0) {
+            failureCollector.addFailure("Trailing lines can not be skipped in incremental reads.",
+                    "Remove the state file or the trailing lines to skip.").withConfigProperty(NAME_SKIP_TRAILING_LINES);
+        }
+        if (isRemote() && getStateFile() != null) {
+            failureCollector.addFailure("Incremental reads are only supported for local files.", null)
+                    .withConfigProperty(NAME_STATE_FILE);
+        }
+        if (maxRecords != null && maxRecords <= 0) {
+            failureCollector.addFailure("Max records must be greater than 0.", null).withConfigProperty(NAME_MAX_RECORDS);
+        }
+        if (maxRecords != null && getStateFile() != null) {
+            failureCollector.addFailure("Records can not be limited in incremental reads.",
+                    "Remove the state file or the max records.").withConfigProperty(NAME_MAX_RECORDS);
+        }
+        if (useRowIndex() && (isRemote() || getStateFile() != null)) {
+            failureCollector.addFailure("Row indexes are only supported for full reads of local files.",
+                    "Remove the state file or disable the row index.").withConfigProperty(NAME_ROW_INDEX);
+        }
+        if (isRemote() && isRecursive()) {
+            failureCollector.addFailure("Remote files can not be read recursively.", null)
+                    .withConfigProperty(NAME_RECURSIVE);
+        }
+        if (readEngine != null && !readEngine.isEmpty() && !ENGINE_READER.equals(readEngine)
+                && !ENGINE_TRANSFORM.equals(readEngine)) {
+            failureCollector.addFailure("Unknown read engine '" + readEngine + "'.",
+                    "Use '" + ENGINE_TRANSFORM + "' or '" + ENGINE_READER + "'.").withConfigProperty(NAME_READ_ENGINE);
+        }
+        String policy = getMalformedRowPolicy();
+        if (!POLICY_FAIL.equals(policy) && !POLICY_SKIP.equals(policy) && !POLICY_ROUTE.equals(policy)) {
+            failureCollector.addFailure("Unknown malformed row policy '" + policy + "'.",
+                    "Use '" + POLICY_FAIL + "', '" + POLICY_SKIP + "' or '" + POLICY_ROUTE + "'.")
+                    .withConfigProperty(NAME_MALFORMED_ROW_POLICY);
+        }
+        if (getMaxMalformedRows() < 0) {
+            failureCollector.addFailure("Max malformed rows can not be negative.", null)
+                    .withConfigProperty(NAME_MAX_MALFORMED_ROWS);
+        }
+        if (getSampleSize() <= 0) {
+            failureCollector.addFailure("Sample size must be greater than 0.", null).withConfigProperty(NAME_SAMPLE_SIZE);
+        }
+        if (!getColumns().isEmpty() && !generateSchemaToggle) {
+            failureCollector.addFailure("Columns can only be selected from CSV files.", "Enable schema generation.")
+                    .withConfigProperty(NAME_COLUMNS);
+        }
+        if (getFilter() != null) {
+            if (!generateSchemaToggle) {
+                failureCollector.addFailure("Rows can only be filtered in CSV files.", "Enable schema generation.")
+                        .withConfigProperty(NAME_FILTER);
+            }
+            try {
+                RowFilter.parse(filter);
+            } catch (IllegalArgumentException e) {
+                failureCollector.addFailure(e.getMessage(), null).withConfigProperty(NAME_FILTER);
+            }
+        }
+        try {
+            getSchema();
+        } catch (IllegalArgumentException e) {
+            failureCollector.addFailure(e.getMessage(), "Provide a valid output schema.").withConfigProperty(NAME_SCHEMA);
+        }
     }
 
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.plugin;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.fs.Path;
+
+import javax.annotation.Nullable;
+
+/**
+ * A CSV row that could not be converted, with where it was read from and why. Routed rows reach the error output as
+ * records of {@link #SCHEMA}. The offset is the key of the record reader, for bzip2 files the position of the
+ * compressed block holding the row rather than of the row itself.
+ */
+public class MalformedRow {
+    public static final Schema SCHEMA = Schema.recordOf("malformedRow",
+            Schema.Field.of("file", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+            Schema.Field.of("offset", Schema.of(Schema.Type.LONG)),
+            Schema.Field.of("reason", Schema.of(Schema.Type.STRING)),
+            Schema.Field.of("body", Schema.of(Schema.Type.STRING)));
+
+    private final String file;
+    private final long offset;
+    private final String reason;
+    private final String body;
+
+    public MalformedRow(@Nullable Path file, long offset, String reason, String body) {
+        this.file = file == null ? null : file.toString();
+        this.offset = offset;
+        this.reason = reason;
+        this.body = body;
+    }
+
+    @Nullable
+    public String getFile() {
+        return file;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public StructuredRecord toRecord() {
+        return StructuredRecord.builder(SCHEMA)
+                .set("file", file)
+                .set("offset", offset)
+                .set("reason", reason)
+                .set("body", body)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return (file == null ? "" : file) + "@" + offset + ": " + reason;
+    }
+}
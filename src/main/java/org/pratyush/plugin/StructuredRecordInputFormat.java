@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.plugin;
+
+import com.google.gson.Gson;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.pratyush.format.CsvInputFormat;
+import org.pratyush.format.CsvRecord;
+import org.pratyush.util.RowFilter;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Input format that builds the output records while a split is read, instead of handing every CSV record to the
+ * source's transform as a {@code KeyValue<LongWritable, Text>}.
+ * <p>
+ * Splits and raw records come from {@link CsvInputFormat}. Each reader converts its whole split in one loop with a
+ * single {@link CsvRecordConverter}, rows rejected by the filter never leave the reader, and the value handed to the
+ * engine is already the {@link StructuredRecord}. Under Spark this loop runs inside the partition iterator of the
+ * Hadoop RDD.
+ * <p>
+ * Rows that can not be converted are handed on as a {@link MalformedRow}, so the stage applies the same malformed row
+ * policy as when it converts the rows itself.
+ */
+public class StructuredRecordInputFormat extends InputFormat<LongWritable, Object> {
+    public static final String SCHEMA = "localfile.record.schema";
+    public static final String HEADER = "localfile.record.header";
+    public static final String FILTER = "localfile.record.filter";
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Records of {@code schema} are built from CSV records with columns {@code header}, or hold the offset and body of
+     * every line if {@code header} is {@code null}.
+     */
+    public static void setRecordSchema(Job job, Schema schema, @Nullable String[] header, @Nullable String filter) {
+        Configuration conf = job.getConfiguration();
+        conf.set(SCHEMA, schema.toString());
+        if (header != null)
+            conf.set(HEADER, GSON.toJson(header));
+        if (filter != null)
+            conf.set(FILTER, filter);
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext context) throws IOException {
+        return new CsvInputFormat().getSplits(context);
+    }
+
+    @Override
+    public RecordReader<LongWritable, Object> createRecordReader(InputSplit split, TaskAttemptContext context)
+            throws IOException {
+        return new StructuredRecordReader(new CsvInputFormat().createRecordReader(split, context));
+    }
+
+    private static final class StructuredRecordReader extends RecordReader<LongWritable, Object> {
+        private final RecordReader<LongWritable, Text> delegate;
+        private CsvRecordConverter converter;
+        private Schema schema;
+        private String[] fieldNames;
+        private Object value;
+
+        StructuredRecordReader(RecordReader<LongWritable, Text> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+            delegate.initialize(split, context);
+            Configuration conf = context.getConfiguration();
+            schema = Schema.parseJson(conf.get(SCHEMA));
+            List<Schema.Field> fields = schema.getFields();
+            fieldNames = new String[fields.size()];
+            for (int i = 0; i < fieldNames.length; i++) {
+                fieldNames[i] = fields.get(i).getName();
+            }
+            String headerJson = conf.get(HEADER);
+            if (headerJson == null)
+                return;
+            String[] header = GSON.fromJson(headerJson, String[].class);
+            RowFilter filter = null;
+            if (conf.get(FILTER) != null) {
+                filter = RowFilter.parse(conf.get(FILTER));
+                filter.bind(header);
+            }
+            converter = new CsvRecordConverter(schema,
+                    conf.get(CsvInputFormat.DELIMITER, CsvInputFormat.DEFAULT_DELIMITER),
+                    LocalFileBatchSource.getColumnIndexes(schema, header), filter, header.length);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            while (delegate.nextKeyValue()) {
+                Text text = delegate.getCurrentValue();
+                if (converter == null) {
+                    value = StructuredRecord.builder(schema)
+                            .set(fieldNames[0], delegate.getCurrentKey().get())
+                            .set(fieldNames[1], text.toString())
+                            .build();
+                    return true;
+                }
+                value = converter.convert(text.getBytes(), text.getLength());
+                if (value == null && converter.getError() != null) {
+                    value = new MalformedRow(CsvRecord.fileOf(text), delegate.getCurrentKey().get(),
+                            converter.getError(), text.toString());
+                }
+                if (value != null)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() throws IOException, InterruptedException {
+            return delegate.getCurrentKey();
+        }
+
+        @Override
+        public Object getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return delegate.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
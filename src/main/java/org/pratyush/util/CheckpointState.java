@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Progress of incremental reads: for every file, its size and modification time when it was last read and the byte
+ * offset up to which its records have been committed. The committed offset always is a record boundary.
+ */
+public class CheckpointState {
+    private static final Gson GSON = new Gson();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Loads the state from a local file, an empty state if the file does not exist yet.
+     */
+    public static CheckpointState load(String stateFile) throws IOException {
+        Path path = Paths.get(stateFile);
+        if (!Files.exists(path))
+            return new CheckpointState();
+        return fromJson(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    public static CheckpointState fromJson(String json) {
+        CheckpointState state = new CheckpointState();
+        List<Entry> entries = GSON.fromJson(json, new TypeToken<List<Entry>>() {
+        }.getType());
+        if (entries != null) {
+            for (Entry entry : entries) {
+                state.put(entry);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Writes the state to a temporary file first and moves it over {@code stateFile}, so a crash never leaves a
+     * partially written state behind.
+     */
+    public void save(String stateFile) throws IOException {
+        Path path = Paths.get(stateFile).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, toJson().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public String toJson() {
+        return GSON.toJson(new ArrayList<>(entries.values()));
+    }
+
+    @Nullable
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public void put(Entry entry) {
+        entries.put(entry.getPath(), entry);
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * Checkpoint of a single file.
+     */
+    public static class Entry {
+        private final String path;
+        private final long size;
+        private final long modificationTime;
+        private final long offset;
+
+        public Entry(String path, long size, long modificationTime, long offset) {
+            this.path = path;
+            this.size = size;
+            this.modificationTime = modificationTime;
+            this.offset = offset;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModificationTime() {
+            return modificationTime;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -17,26 +17,145 @@
 package org.pratyush.util;
 
 import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.pratyush.format.CodecDetector;
+import org.pratyush.format.CsvLineReader;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class CsvHelper {
     public static final String CSV_EXT = ".csv";
+    public static final List<String> COMPRESSION_EXTS = Arrays.asList(".gz", ".bz2", ".zst", ".lz4", ".deflate");
+    public static final int HEADER_CHECK_PARALLELISM = 16;
+    private static final List<String> PLAIN_TEXT_EXTS = Arrays.asList(CSV_EXT, ".tsv", ".txt");
+
     public Schema generateSchemaFromCsv(String csvString, String delimiter) {
         String headerLine = csvString.split("\n")[0]; //if csvString has multiple lines consider first
-        String[] headerValues = headerLine.split(delimiter);
+        byte[] headerBytes = headerLine.getBytes(StandardCharsets.UTF_8);
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+        int headerCount = tokenizer.tokenize(headerBytes, headerBytes.length);
+
+        String[] headerNames = new String[headerCount];
+        for (int i = 0; i < headerCount; i++) {
+            headerNames[i] = tokenizer.getString(i);
+        }
+        return generateSchemaFromHeader(headerNames);
+    }
 
+    public Schema generateSchemaFromHeader(String[] headerNames) {
         List<Schema.Field> schemaFields = new ArrayList<>();
 
-        for (String headerName : headerValues) {
+        for (String headerName : headerNames) {
             schemaFields.add(Schema.Field.of(headerName, Schema.of(Schema.Type.STRING)));
         }
         return Schema.recordOf("event", schemaFields);
     }
 
+    /**
+     * Reads the header of a CSV file, skipping {@code skipLines} lines before it.
+     */
+    public String[] readHeader(RangeReader reader, String delimiter, int skipLines) throws IOException {
+        return readHeader(new RangeInputStream(reader, 0), delimiter, skipLines);
+    }
+
+    /**
+     * Reads the header of a CSV file from the start of {@code in}, skipping {@code skipLines} lines before it.
+     */
+    public String[] readHeader(InputStream in, String delimiter, int skipLines) throws IOException {
+        CsvLineReader lineReader = new CsvLineReader(in, delimiter.getBytes(StandardCharsets.UTF_8), true);
+        Text header = new Text();
+        for (int i = 0; i <= skipLines; i++) {
+            if (lineReader.readRecord(header) == 0)
+                throw new IOException("File has no header line.");
+        }
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+        int headerCount = tokenizer.tokenize(header.getBytes(), header.getLength());
+        String[] headerNames = new String[headerCount];
+        for (int i = 0; i < headerCount; i++) {
+            headerNames[i] = tokenizer.getString(i);
+        }
+        return headerNames;
+    }
+
+    /**
+     * Reads the headers of all {@code files} in parallel and checks that they are identical.
+     *
+     * @return the header shared by all files
+     * @throws IOException if a file can not be read or its header differs from the one of the first file
+     */
+    public String[] readConsistentHeader(List<Path> files, Configuration conf, String delimiter, int skipLines)
+            throws IOException {
+        if (files.isEmpty())
+            throw new IOException("No input files found.");
+        List<Callable<String[]>> tasks = new ArrayList<>();
+        for (Path file : files) {
+            tasks.add(() -> {
+                try (InputStream in = CodecDetector.open(conf, file)) {
+                    return readHeader(in, delimiter, skipLines);
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(HEADER_CHECK_PARALLELISM, files.size()));
+        try {
+            List<Future<String[]>> headers = executor.invokeAll(tasks);
+            String[] header = headers.get(0).get();
+            for (int i = 1; i < headers.size(); i++) {
+                String[] fileHeader = headers.get(i).get();
+                if (!Arrays.equals(header, fileHeader))
+                    throw new IOException("Header of " + files.get(i) + " " + Arrays.toString(fileHeader)
+                            + " differs from header of " + files.get(0) + " " + Arrays.toString(header) + ".");
+            }
+            return header;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading headers.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read header: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     public boolean isCsvFile(String path){
-        return path.endsWith(CSV_EXT);
+        return stripCompressionExtension(path).endsWith(CSV_EXT);
+    }
+
+    /**
+     * Whether the name has an extension of an uncompressed text file, such files are not checked for magic bytes.
+     */
+    public static boolean isPlainTextFile(String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        for (String extension : PLAIN_TEXT_EXTS) {
+            if (lowerName.endsWith(extension))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the extension of a compression codec, {@code data.csv.gz} becomes {@code data.csv}.
+     */
+    public static String stripCompressionExtension(String path) {
+        String lowerPath = path.toLowerCase(Locale.ROOT);
+        for (String extension : COMPRESSION_EXTS) {
+            if (lowerPath.endsWith(extension))
+                return path.substring(0, path.length() - extension.length());
+        }
+        return path;
     }
 }
 
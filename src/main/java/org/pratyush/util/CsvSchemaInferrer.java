@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.hadoop.io.Text;
+import org.pratyush.format.CsvLineReader;
+import org.pratyush.format.RecordBoundaryFinder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Infers a typed schema from a CSV header and a sample of its rows.
+ * <p>
+ * Rows are sampled from evenly spaced ranges of the file that are read in parallel, so the sample is not biased
+ * towards the head of the file. Every column starts with all candidate types and drops the ones a sampled value does
+ * not parse as, the narrowest remaining type wins in the order BOOLEAN, INT, LONG, DOUBLE, DATE, TIMESTAMP, STRING.
+ * An empty value makes a typed column nullable. Rows whose field count differs from the header are ignored.
+ */
+public class CsvSchemaInferrer {
+    public static final int DEFAULT_SAMPLE_SIZE = 1000;
+    public static final int DEFAULT_PARALLELISM = 4;
+    // below this many bytes per range, the file is sampled from the head only
+    private static final long MIN_RANGE_SIZE = 64 * 1024;
+
+    private final String delimiter;
+    private final int sampleSize;
+    private final int parallelism;
+
+    public CsvSchemaInferrer(String delimiter, int sampleSize, int parallelism) {
+        this.delimiter = delimiter;
+        this.sampleSize = sampleSize;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Infers the schema of the file behind {@code reader}, skipping {@code skipLines} lines before the header.
+     */
+    public Schema infer(RangeReader reader, int skipLines) throws IOException {
+        byte[] delimiterBytes = delimiter.getBytes(StandardCharsets.UTF_8);
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+        Text record = new Text();
+
+        long headerEnd = 0;
+        CsvLineReader headerReader = new CsvLineReader(new RangeInputStream(reader, 0), delimiterBytes, true);
+        for (int i = 0; i <= skipLines; i++) {
+            int consumed = headerReader.readRecord(record);
+            if (consumed == 0)
+                throw new IOException("File has no header line.");
+            headerEnd += consumed;
+        }
+        String[] names = readHeader(tokenizer, record);
+
+        long dataLength = reader.length() - headerEnd;
+        int ranges = (int) Math.max(1, Math.min(parallelism, dataLength / MIN_RANGE_SIZE));
+        int rowsPerRange = (sampleSize + ranges - 1) / ranges;
+        List<Callable<ColumnType[]>> tasks = new ArrayList<>();
+        for (int i = 0; i < ranges; i++) {
+            long rangeStart = headerEnd + dataLength * i / ranges;
+            long rangeEnd = headerEnd + dataLength * (i + 1) / ranges;
+            boolean atRecordStart = i == 0;
+            tasks.add(() -> sampleRange(reader, rangeStart, rangeEnd, atRecordStart, rowsPerRange, names.length));
+        }
+
+        ColumnType[] columns = newColumnTypes(names.length);
+        ExecutorService executor = Executors.newFixedThreadPool(ranges);
+        try {
+            for (Future<ColumnType[]> future : executor.invokeAll(tasks)) {
+                ColumnType[] rangeColumns = future.get();
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i].merge(rangeColumns[i]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sampling rows.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to sample rows: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return toSchema(names, columns);
+    }
+
+    /**
+     * Infers the schema from a stream that can only be read in order, e.g. a decompressed file. The sample is taken
+     * from the rows that follow the header.
+     */
+    public Schema infer(InputStream in, int skipLines) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+        FieldParser parser = new FieldParser();
+        CsvLineReader lineReader = new CsvLineReader(in, delimiter.getBytes(StandardCharsets.UTF_8), true);
+        Text record = new Text();
+        for (int i = 0; i <= skipLines; i++) {
+            if (lineReader.readRecord(record) == 0)
+                throw new IOException("File has no header line.");
+        }
+        String[] names = readHeader(tokenizer, record);
+
+        ColumnType[] columns = newColumnTypes(names.length);
+        for (int i = 0; i < sampleSize && lineReader.readRecord(record) > 0; i++) {
+            update(columns, tokenizer, parser, record.getBytes(), record.getLength());
+        }
+        return toSchema(names, columns);
+    }
+
+    /**
+     * Infers the schema from already fetched lines, the first one being the header.
+     */
+    public Schema infer(List<String> lines) {
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+        FieldParser parser = new FieldParser();
+        byte[] header = lines.get(0).getBytes(StandardCharsets.UTF_8);
+        Text record = new Text();
+        record.set(header, 0, header.length);
+        String[] names = readHeader(tokenizer, record);
+
+        ColumnType[] columns = newColumnTypes(names.length);
+        int sampleEnd = (int) Math.min(lines.size(), (long) sampleSize + 1);
+        for (int i = 1; i < sampleEnd; i++) {
+            byte[] line = lines.get(i).getBytes(StandardCharsets.UTF_8);
+            update(columns, tokenizer, parser, line, line.length);
+        }
+        return toSchema(names, columns);
+    }
+
+    private String[] readHeader(CsvTokenizer tokenizer, Text record) {
+        int count = tokenizer.tokenize(record.getBytes(), record.getLength());
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = tokenizer.getString(i);
+        }
+        return names;
+    }
+
+    private ColumnType[] sampleRange(RangeReader reader, long rangeStart, long rangeEnd, boolean atRecordStart,
+                                     int rows, int columnCount) throws IOException {
+        ColumnType[] columns = newColumnTypes(columnCount);
+        byte[] delimiterBytes = delimiter.getBytes(StandardCharsets.UTF_8);
+        long start = rangeStart;
+        if (!atRecordStart) {
+            long skip = RecordBoundaryFinder.findRecordStart(new RangeInputStream(reader, start), delimiterBytes, true);
+            if (skip < 0)
+                return columns;
+            start += skip;
+        }
+
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+        FieldParser parser = new FieldParser();
+        CsvLineReader lineReader = new CsvLineReader(new RangeInputStream(reader, start), delimiterBytes, true);
+        Text record = new Text();
+        long pos = start;
+        for (int i = 0; i < rows && pos < rangeEnd; i++) {
+            int consumed = lineReader.readRecord(record);
+            if (consumed == 0)
+                break;
+            pos += consumed;
+            update(columns, tokenizer, parser, record.getBytes(), record.getLength());
+        }
+        return columns;
+    }
+
+    private static void update(ColumnType[] columns, CsvTokenizer tokenizer, FieldParser parser, byte[] bytes,
+                               int length) {
+        if (tokenizer.tokenize(bytes, length) != columns.length)
+            return;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].update(parser, tokenizer.getFieldBytes(i), tokenizer.getFieldStart(i),
+                    tokenizer.getFieldLength(i));
+        }
+    }
+
+    private static ColumnType[] newColumnTypes(int count) {
+        ColumnType[] columns = new ColumnType[count];
+        for (int i = 0; i < count; i++) {
+            columns[i] = new ColumnType();
+        }
+        return columns;
+    }
+
+    private static Schema toSchema(String[] names, ColumnType[] columns) {
+        List<Schema.Field> fields = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            fields.add(Schema.Field.of(names[i], columns[i].toSchema()));
+        }
+        return Schema.recordOf("event", fields);
+    }
+
+    /**
+     * Candidate types of a single column.
+     */
+    private static final class ColumnType {
+        private boolean canBeBoolean = true;
+        private boolean canBeInt = true;
+        private boolean canBeLong = true;
+        private boolean canBeDouble = true;
+        private boolean canBeDate = true;
+        private boolean canBeTimestamp = true;
+        private boolean seenValue;
+        private boolean seenEmpty;
+
+        void update(FieldParser parser, byte[] bytes, int start, int length) {
+            if (length == 0) {
+                seenEmpty = true;
+                return;
+            }
+            seenValue = true;
+            canBeBoolean = canBeBoolean && parser.tryParseBoolean(bytes, start, length);
+            canBeInt = canBeInt && parser.tryParseInt(bytes, start, length);
+            // every int is a long and every long a double, no need to parse again
+            canBeLong = canBeLong && (canBeInt || parser.tryParseLong(bytes, start, length));
+            canBeDouble = canBeDouble && (canBeLong || parser.tryParseDouble(bytes, start, length));
+            canBeDate = canBeDate && parser.tryParseDate(bytes, start, length);
+            canBeTimestamp = canBeTimestamp && parser.tryParseTimestamp(bytes, start, length);
+        }
+
+        void merge(ColumnType other) {
+            canBeBoolean &= other.canBeBoolean;
+            canBeInt &= other.canBeInt;
+            canBeLong &= other.canBeLong;
+            canBeDouble &= other.canBeDouble;
+            canBeDate &= other.canBeDate;
+            canBeTimestamp &= other.canBeTimestamp;
+            seenValue |= other.seenValue;
+            seenEmpty |= other.seenEmpty;
+        }
+
+        Schema toSchema() {
+            Schema schema;
+            if (!seenValue)
+                return Schema.nullableOf(Schema.of(Schema.Type.STRING));
+            if (canBeBoolean)
+                schema = Schema.of(Schema.Type.BOOLEAN);
+            else if (canBeInt)
+                schema = Schema.of(Schema.Type.INT);
+            else if (canBeLong)
+                schema = Schema.of(Schema.Type.LONG);
+            else if (canBeDouble)
+                schema = Schema.of(Schema.Type.DOUBLE);
+            else if (canBeDate)
+                schema = Schema.of(Schema.LogicalType.DATE);
+            else if (canBeTimestamp)
+                schema = Schema.of(Schema.LogicalType.TIMESTAMP_MICROS);
+            else
+                // an empty string is a valid string, so string columns stay non nullable
+                return Schema.of(Schema.Type.STRING);
+            return seenEmpty ? Schema.nullableOf(schema) : schema;
+        }
+    }
+}
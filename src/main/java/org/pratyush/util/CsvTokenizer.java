@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a single CSV record held as UTF-8 bytes into fields following RFC 4180.
+ * <p>
+ * The record bytes are scanned in place, fields are exposed as (offset, length) pairs and only decoded on request.
+ * Plain and quoted fields point straight into the record, only quoted fields containing escaped quotes are
+ * unescaped into an internal scratch buffer. All buffers are reused across records, so a tokenizer instance is not
+ * thread safe and the fields of a record are only valid until the next call to {@link #tokenize(byte[], int)}.
+ * <p>
+ * With {@link #setSelectedFields(boolean[])} only the selected fields are unescaped, the others are just skipped over,
+ * and tokenizing stops after the last selected field.
+ */
+public class CsvTokenizer {
+    public static final byte QUOTE = '"';
+    private static final int INITIAL_FIELDS = 16;
+
+    private final byte[] delimiter;
+    private final boolean singleByteDelimiter;
+
+    private byte[] record;
+    private byte[] scratch = new byte[64];
+    private int scratchLength;
+
+    private int fieldCount;
+    private int[] fieldStarts = new int[INITIAL_FIELDS];
+    private int[] fieldLengths = new int[INITIAL_FIELDS];
+    private boolean[] fieldInScratch = new boolean[INITIAL_FIELDS];
+
+    private boolean[] selectedFields;
+    private int fieldLimit = Integer.MAX_VALUE;
+    private boolean moreFields;
+
+    public CsvTokenizer(String delimiter) {
+        if (delimiter == null || delimiter.isEmpty())
+            throw new IllegalArgumentException("Delimiter can not be empty.");
+        this.delimiter = delimiter.getBytes(StandardCharsets.UTF_8);
+        this.singleByteDelimiter = this.delimiter.length == 1;
+    }
+
+    /**
+     * Restricts tokenizing to the fields whose index is {@code true} in {@code selected}. Fields past the end of the
+     * array are not read at all, so {@link #getFieldCount()} never exceeds its length.
+     */
+    public void setSelectedFields(boolean[] selected) {
+        this.selectedFields = selected;
+        this.fieldLimit = selected.length;
+    }
+
+    /**
+     * Tokenizes the first {@code length} bytes of {@code bytes}. A trailing carriage return is ignored.
+     *
+     * @return number of fields found in the record
+     */
+    public int tokenize(byte[] bytes, int length) {
+        record = bytes;
+        fieldCount = 0;
+        scratchLength = 0;
+        if (fieldLimit == 0) {
+            // no field is selected, but every record has at least one
+            moreFields = true;
+            return 0;
+        }
+
+        int end = length;
+        if (end > 0 && bytes[end - 1] == '\r')
+            end--;
+
+        int pos = 0;
+        while (true) {
+            if (pos < end && bytes[pos] == QUOTE)
+                pos = isSelected(fieldCount) ? readQuoted(bytes, pos + 1, end) : skipQuoted(bytes, pos + 1, end);
+            else
+                pos = readPlain(bytes, pos, end);
+            if (pos >= end || fieldCount >= fieldLimit)
+                break;
+            pos += delimiter.length;
+        }
+        moreFields = pos < end;
+        return fieldCount;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Whether tokenizing stopped at the last selected field while the record has more fields after it.
+     */
+    public boolean hasMoreFields() {
+        return moreFields;
+    }
+
+    /**
+     * Returns the array holding the bytes of field {@code idx}, starting at {@link #getFieldStart(int)}.
+     */
+    public byte[] getFieldBytes(int idx) {
+        checkIndex(idx);
+        return fieldInScratch[idx] ? scratch : record;
+    }
+
+    public int getFieldStart(int idx) {
+        checkIndex(idx);
+        return fieldStarts[idx];
+    }
+
+    public int getFieldLength(int idx) {
+        checkIndex(idx);
+        return fieldLengths[idx];
+    }
+
+    public String getString(int idx) {
+        return new String(getFieldBytes(idx), fieldStarts[idx], fieldLengths[idx], StandardCharsets.UTF_8);
+    }
+
+    private void checkIndex(int idx) {
+        if (idx < 0 || idx >= fieldCount)
+            throw new IndexOutOfBoundsException("Field " + idx + " requested but record has " + fieldCount + " fields");
+    }
+
+    private int readPlain(byte[] bytes, int start, int end) {
+        int pos = indexOfDelimiter(bytes, start, end);
+        addField(start, pos - start, false);
+        return pos;
+    }
+
+    /**
+     * Reads a quoted field whose content starts at {@code start}, returns the position of the delimiter that ends
+     * it or {@code end}.
+     */
+    private int readQuoted(byte[] bytes, int start, int end) {
+        int segmentStart = start;
+        int scratchStart = -1;
+        int pos = start;
+        while (pos < end) {
+            if (bytes[pos] != QUOTE) {
+                pos++;
+                continue;
+            }
+            if (pos + 1 < end && bytes[pos + 1] == QUOTE) {
+                // escaped quote, keep one of the two
+                if (scratchStart < 0)
+                    scratchStart = scratchLength;
+                appendScratch(bytes, segmentStart, pos + 1 - segmentStart);
+                pos += 2;
+                segmentStart = pos;
+                continue;
+            }
+
+            // closing quote, anything up to the next delimiter is kept as is
+            int closingQuote = pos;
+            int delimiterPos = indexOfDelimiter(bytes, pos + 1, end);
+            if (scratchStart < 0 && delimiterPos == closingQuote + 1) {
+                addField(start, closingQuote - start, false);
+            } else {
+                if (scratchStart < 0)
+                    scratchStart = scratchLength;
+                appendScratch(bytes, segmentStart, closingQuote - segmentStart);
+                appendScratch(bytes, closingQuote + 1, delimiterPos - closingQuote - 1);
+                addField(scratchStart, scratchLength - scratchStart, true);
+            }
+            return delimiterPos;
+        }
+
+        // unterminated quote, take the rest of the record
+        if (scratchStart < 0) {
+            addField(start, end - start, false);
+        } else {
+            appendScratch(bytes, segmentStart, end - segmentStart);
+            addField(scratchStart, scratchLength - scratchStart, true);
+        }
+        return end;
+    }
+
+    /**
+     * Finds the end of a quoted field that is not selected. The field is recorded with its raw, still escaped bytes.
+     */
+    private int skipQuoted(byte[] bytes, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            if (bytes[pos] == QUOTE) {
+                if (pos + 1 < end && bytes[pos + 1] == QUOTE) {
+                    pos += 2;
+                    continue;
+                }
+                int delimiterPos = indexOfDelimiter(bytes, pos + 1, end);
+                addField(start, delimiterPos - start, false);
+                return delimiterPos;
+            }
+            pos++;
+        }
+        addField(start, end - start, false);
+        return end;
+    }
+
+    private boolean isSelected(int idx) {
+        return selectedFields == null || selectedFields[idx];
+    }
+
+    private int indexOfDelimiter(byte[] bytes, int start, int end) {
+        int pos = start;
+        if (singleByteDelimiter) {
+            byte delimiterByte = delimiter[0];
+            while (pos < end && bytes[pos] != delimiterByte)
+                pos++;
+            return pos;
+        }
+        int lastStart = end - delimiter.length;
+        while (pos <= lastStart) {
+            if (isDelimiterAt(bytes, pos))
+                return pos;
+            pos++;
+        }
+        return end;
+    }
+
+    private boolean isDelimiterAt(byte[] bytes, int pos) {
+        for (int i = 0; i < delimiter.length; i++) {
+            if (bytes[pos + i] != delimiter[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void appendScratch(byte[] bytes, int start, int length) {
+        if (scratchLength + length > scratch.length)
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+        System.arraycopy(bytes, start, scratch, scratchLength, length);
+        scratchLength += length;
+    }
+
+    private void addField(int start, int length, boolean inScratch) {
+        if (fieldCount == fieldStarts.length) {
+            int capacity = fieldStarts.length * 2;
+            fieldStarts = Arrays.copyOf(fieldStarts, capacity);
+            fieldLengths = Arrays.copyOf(fieldLengths, capacity);
+            fieldInScratch = Arrays.copyOf(fieldInScratch, capacity);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldLengths[fieldCount] = length;
+        fieldInScratch[fieldCount] = inScratch;
+        fieldCount++;
+    }
+}
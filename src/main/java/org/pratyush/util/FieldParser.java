@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses primitive values straight from UTF-8 field bytes without creating intermediate Strings.
+ * <p>
+ * Every {@code tryParse} method returns whether the bytes hold a valid value and leaves the parsed value in
+ * {@link #getLongValue()}, {@link #getDoubleValue()} or {@link #getBooleanValue()}, so invalid input costs no
+ * exception. An instance is reused across fields and is not thread safe.
+ */
+public class FieldParser {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private long longValue;
+    private double doubleValue;
+    private boolean booleanValue;
+    private long epochDay;
+
+    public long getLongValue() {
+        return longValue;
+    }
+
+    public double getDoubleValue() {
+        return doubleValue;
+    }
+
+    public boolean getBooleanValue() {
+        return booleanValue;
+    }
+
+    public boolean tryParseInt(byte[] bytes, int start, int length) {
+        return tryParseLong(bytes, start, length) && longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE;
+    }
+
+    public boolean tryParseLong(byte[] bytes, int start, int length) {
+        if (length == 0)
+            return false;
+        int pos = start;
+        int end = start + length;
+        boolean negative = bytes[pos] == '-';
+        if (negative || bytes[pos] == '+')
+            pos++;
+        if (pos == end)
+            return false;
+
+        // accumulate negatively so Long.MIN_VALUE fits
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; pos < end; pos++) {
+            int digit = bytes[pos] - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit)
+                return false;
+            result *= 10;
+            if (result < limit + digit)
+                return false;
+            result -= digit;
+        }
+        longValue = negative ? result : -result;
+        return true;
+    }
+
+    public boolean tryParseDouble(byte[] bytes, int start, int length) {
+        if (length == 0)
+            return false;
+        int pos = start;
+        int end = start + length;
+        boolean negative = bytes[pos] == '-';
+        if (negative || bytes[pos] == '+')
+            pos++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean seenDigit = false;
+        for (; pos < end && isDigit(bytes[pos]); pos++) {
+            seenDigit = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (bytes[pos] - '0');
+                if (mantissa != 0)
+                    digits++;
+            } else {
+                exponent++;
+                exact = false;
+            }
+        }
+        if (pos < end && bytes[pos] == '.') {
+            pos++;
+            for (; pos < end && isDigit(bytes[pos]); pos++) {
+                seenDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (bytes[pos] - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+            }
+        }
+        if (!seenDigit)
+            return false;
+        if (pos < end && (bytes[pos] == 'e' || bytes[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = pos < end && bytes[pos] == '-';
+            if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+'))
+                pos++;
+            if (pos == end)
+                return false;
+            int explicitExponent = 0;
+            for (; pos < end && isDigit(bytes[pos]); pos++) {
+                if (explicitExponent < 10000)
+                    explicitExponent = explicitExponent * 10 + (bytes[pos] - '0');
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (pos != end)
+            return false;
+
+        if (exact && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            // both operands are exact doubles, so a single operation gives the correctly rounded result
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            doubleValue = negative ? -value : value;
+            return true;
+        }
+        // syntax is already validated, only precision needs the slow path
+        doubleValue = Double.parseDouble(new String(bytes, start, length, StandardCharsets.US_ASCII));
+        return true;
+    }
+
+    public boolean tryParseBoolean(byte[] bytes, int start, int length) {
+        if (length == 4 && equalsIgnoreCase(bytes, start, "true")) {
+            booleanValue = true;
+            return true;
+        }
+        if (length == 5 && equalsIgnoreCase(bytes, start, "false")) {
+            booleanValue = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses an ISO {@code yyyy-MM-dd} date into days since the epoch.
+     */
+    public boolean tryParseDate(byte[] bytes, int start, int length) {
+        if (length != 10 || !parseDate(bytes, start))
+            return false;
+        longValue = epochDay;
+        return true;
+    }
+
+    /**
+     * Parses {@code yyyy-MM-dd[T| ]HH:mm:ss[.fraction][Z|+HH:mm|-HH:mm]} into microseconds since the epoch. Without
+     * an offset the timestamp is taken as UTC.
+     */
+    public boolean tryParseTimestamp(byte[] bytes, int start, int length) {
+        int end = start + length;
+        if (length < 19 || !parseDate(bytes, start))
+            return false;
+        byte separator = bytes[start + 10];
+        if (separator != 'T' && separator != ' ')
+            return false;
+        int hour = twoDigits(bytes, start + 11);
+        int minute = twoDigits(bytes, start + 14);
+        int second = twoDigits(bytes, start + 17);
+        if (bytes[start + 13] != ':' || bytes[start + 16] != ':' || hour < 0 || hour > 23 || minute < 0
+                || minute > 59 || second < 0 || second > 59)
+            return false;
+
+        int pos = start + 19;
+        long micros = 0;
+        if (pos < end && bytes[pos] == '.') {
+            pos++;
+            int fractionDigits = 0;
+            for (; pos < end && isDigit(bytes[pos]); pos++, fractionDigits++) {
+                if (fractionDigits < 6)
+                    micros = micros * 10 + (bytes[pos] - '0');
+            }
+            if (fractionDigits == 0)
+                return false;
+            for (; fractionDigits < 6; fractionDigits++) {
+                micros *= 10;
+            }
+        }
+
+        int offsetSeconds = 0;
+        if (pos < end && bytes[pos] == 'Z') {
+            pos++;
+        } else if (pos < end && (bytes[pos] == '+' || bytes[pos] == '-')) {
+            if (end - pos != 6 || bytes[pos + 3] != ':')
+                return false;
+            int offsetHours = twoDigits(bytes, pos + 1);
+            int offsetMinutes = twoDigits(bytes, pos + 4);
+            if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59)
+                return false;
+            offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (bytes[pos] == '-' ? -1 : 1);
+            pos += 6;
+        }
+        if (pos != end)
+            return false;
+
+        long seconds = epochDay * 86400L + hour * 3600L + minute * 60L + second - offsetSeconds;
+        longValue = seconds * 1_000_000L + micros;
+        return true;
+    }
+
+    private boolean parseDate(byte[] bytes, int start) {
+        if (bytes[start + 4] != '-' || bytes[start + 7] != '-')
+            return false;
+        int yearHigh = twoDigits(bytes, start);
+        int yearLow = twoDigits(bytes, start + 2);
+        int month = twoDigits(bytes, start + 5);
+        int day = twoDigits(bytes, start + 8);
+        if (yearHigh < 0 || yearLow < 0 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1])
+            return false;
+        int year = yearHigh * 100 + yearLow;
+        boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        if (month == 2 && day == 29 && !leapYear)
+            return false;
+        epochDay = toEpochDay(year, month, day);
+        return true;
+    }
+
+    /**
+     * Days from civil, see http://howardhinnant.github.io/date_algorithms.html.
+     */
+    private static long toEpochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int twoDigits(byte[] bytes, int pos) {
+        int high = bytes[pos] - '0';
+        int low = bytes[pos + 1] - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9)
+            return -1;
+        return high * 10 + low;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean equalsIgnoreCase(byte[] bytes, int start, String lowerCase) {
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if ((bytes[start + i] | 0x20) != lowerCase.charAt(i))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations over fixed buckets from 10 ms to a minute. Buckets are {@link LongAdder}s, so recording from
+ * many threads does not contend. Bucket names are suffixes for metric names, e.g. {@code le100ms}.
+ */
+public class LatencyHistogram {
+    private static final long[] UPPER_BOUNDS_MILLIS = {10, 100, 1000, 10_000, 60_000};
+    private static final String[] BUCKET_NAMES = {"le10ms", "le100ms", "le1s", "le10s", "le60s", "gt60s"};
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_NAMES.length];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < UPPER_BOUNDS_MILLIS.length && millis > UPPER_BOUNDS_MILLIS[bucket])
+            bucket++;
+        buckets[bucket].increment();
+    }
+
+    public int getBucketCount() {
+        return buckets.length;
+    }
+
+    public String getBucketName(int bucket) {
+        return BUCKET_NAMES[bucket];
+    }
+
+    public long getCount(int bucket) {
+        return buckets[bucket].sum();
+    }
+
+    /**
+     * Returns the count of {@code bucket} and resets it, for counters that are flushed as deltas.
+     */
+    public long drain(int bucket) {
+        return buckets[bucket].sumThenReset();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link RangeReader} over a memory mapped local file. The file is mapped lazily in windows, so files larger than
+ * 2 GB can be read and only the windows that are actually touched take address space. Reads copy straight out of the
+ * page cache without a system call.
+ * <p>
+ * The length is taken when the reader is opened, bytes appended later are not visible. Touching a mapped page past
+ * the end of a file that was truncated meanwhile faults, so every read first checks the current size of the file and
+ * fails with an {@link IOException} instead.
+ */
+public class MappedRangeReader implements RangeReader {
+    public static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long length;
+    private final long windowSize;
+    private final MappedByteBuffer[] windows;
+
+    public MappedRangeReader(String path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedRangeReader(String path, long windowSize) throws IOException {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Window size must be between 1 and " + Integer.MAX_VALUE + ".");
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.length = channel.size();
+        this.windowSize = windowSize;
+        this.windows = new MappedByteBuffer[(int) ((length + windowSize - 1) / windowSize)];
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Reads up to the end of the window holding {@code position}, a read crossing a window boundary returns fewer
+     * bytes than requested.
+     */
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position >= this.length)
+            return -1;
+        int window = (int) (position / windowSize);
+        long windowEnd = Math.min(this.length, (window + 1) * windowSize);
+        int count = (int) Math.min(length, windowEnd - position);
+        if (channel.size() < position + count)
+            throw truncated();
+        // every read works on its own view, so concurrent reads do not share a buffer position
+        ByteBuffer view = getWindow(window).duplicate();
+        view.position((int) (position - window * windowSize));
+        try {
+            view.get(buffer, offset, count);
+        } catch (InternalError e) {
+            // truncated between the check and the copy, the JVM reports the fault as InternalError
+            IOException failure = truncated();
+            failure.initCause(e);
+            throw failure;
+        }
+        return count;
+    }
+
+    private IOException truncated() throws IOException {
+        return new IOException("File shrank from " + length + " to " + channel.size() + " bytes while it was read.");
+    }
+
+    private synchronized MappedByteBuffer getWindow(int window) throws IOException {
+        if (windows[window] == null) {
+            long start = window * windowSize;
+            windows[window] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, length - start));
+        }
+        return windows[window];
+    }
+
+    /**
+     * Closes the file. Mapped windows are released once they are garbage collected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = null;
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import org.apache.hadoop.fs.Seekable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Sequential stream over a {@link RangeReader} starting at a given position. Closing the stream does not close the
+ * underlying reader, so several streams can read different parts of the same file.
+ */
+public class RangeInputStream extends InputStream implements Seekable {
+    private final RangeReader reader;
+    private long position;
+
+    public RangeInputStream(RangeReader reader, long position) {
+        this.reader = reader;
+        this.position = position;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public void seek(long pos) {
+        position = pos;
+    }
+
+    @Override
+    public long getPos() {
+        return position;
+    }
+
+    @Override
+    public boolean seekToNewSource(long targetPos) {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        int read = reader.read(position, buffer, offset, length);
+        if (read > 0)
+            position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        position += Math.max(n, 0);
+        return Math.max(n, 0);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Positional reads from a file, local or remote. Implementations allow concurrent reads from multiple threads.
+ */
+public interface RangeReader extends Closeable {
+
+    long length() throws IOException;
+
+    /**
+     * Reads up to {@code length} bytes starting at {@code position}.
+     *
+     * @return number of bytes read, -1 if {@code position} is at or past the end of the file
+     */
+    int read(long position, byte[] buffer, int offset, int length) throws IOException;
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Row filter evaluated on the raw fields of a tokenized CSV record, before any record is built.
+ * <p>
+ * Supported expressions: {@code column = value} with the operators {@code = != <> < <= > >=},
+ * {@code column [NOT] IN (value, ...)}, {@code column IS [NOT] NULL}, combined with {@code AND}, {@code OR},
+ * {@code NOT} and parentheses. Values are numbers, 'quoted strings' or bare words. Column names containing special
+ * characters can be written as "quoted" or `backticked` names. A numeric value compares numerically, a field that is
+ * not a number then never matches. Other values compare byte wise. An empty or missing field is null, no comparison
+ * matches it, {@code !=} and {@code NOT IN} included, only {@code IS NULL} or a {@code NOT} around a predicate does.
+ * <p>
+ * A filter is parsed once, bound to the header with {@link #bind(String[])} and then only reads tokenizer offsets.
+ * It is not thread safe.
+ */
+public class RowFilter {
+    private final Node root;
+    private final Set<String> columnNames;
+    private final FieldParser parser = new FieldParser();
+    private int[] columns;
+
+    private RowFilter(Node root, Set<String> columnNames) {
+        this.root = root;
+        this.columnNames = columnNames;
+    }
+
+    public static RowFilter parse(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parseExpression();
+        parser.expectEnd();
+        return new RowFilter(root, parser.columnNames);
+    }
+
+    /**
+     * Resolves the referenced columns against the CSV header.
+     *
+     * @return indexes of the columns the filter reads
+     */
+    public int[] bind(String[] headerNames) {
+        Map<String, Integer> headerIndexes = new HashMap<>();
+        for (int i = headerNames.length - 1; i >= 0; i--) {
+            headerIndexes.put(headerNames[i], i);
+        }
+        Map<String, Integer> bound = new HashMap<>();
+        columns = new int[columnNames.size()];
+        int idx = 0;
+        for (String name : columnNames) {
+            Integer column = headerIndexes.get(name);
+            if (column == null)
+                throw new IllegalArgumentException("Filter column '" + name + "' is not part of the CSV header.");
+            bound.put(name, column);
+            columns[idx++] = column;
+        }
+        root.bind(bound);
+        return columns;
+    }
+
+    /**
+     * Indexes of the columns the filter reads, available once bound.
+     */
+    public int[] getColumns() {
+        return columns;
+    }
+
+    public boolean test(CsvTokenizer tokenizer) {
+        return root.test(tokenizer, parser);
+    }
+
+    private abstract static class Node {
+        abstract void bind(Map<String, Integer> columns);
+
+        abstract boolean test(CsvTokenizer tokenizer, FieldParser parser);
+    }
+
+    private static final class And extends Node {
+        private final Node left;
+        private final Node right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void bind(Map<String, Integer> columns) {
+            left.bind(columns);
+            right.bind(columns);
+        }
+
+        @Override
+        boolean test(CsvTokenizer tokenizer, FieldParser parser) {
+            return left.test(tokenizer, parser) && right.test(tokenizer, parser);
+        }
+    }
+
+    private static final class Or extends Node {
+        private final Node left;
+        private final Node right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void bind(Map<String, Integer> columns) {
+            left.bind(columns);
+            right.bind(columns);
+        }
+
+        @Override
+        boolean test(CsvTokenizer tokenizer, FieldParser parser) {
+            return left.test(tokenizer, parser) || right.test(tokenizer, parser);
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        void bind(Map<String, Integer> columns) {
+            operand.bind(columns);
+        }
+
+        @Override
+        boolean test(CsvTokenizer tokenizer, FieldParser parser) {
+            return !operand.test(tokenizer, parser);
+        }
+    }
+
+    /**
+     * Base for predicates on a single column.
+     */
+    private abstract static class ColumnNode extends Node {
+        private final String name;
+        int column;
+
+        ColumnNode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        void bind(Map<String, Integer> columns) {
+            column = columns.get(name);
+        }
+
+        boolean isNull(CsvTokenizer tokenizer) {
+            return column >= tokenizer.getFieldCount() || tokenizer.getFieldLength(column) == 0;
+        }
+    }
+
+    private static final class IsNull extends ColumnNode {
+        IsNull(String name) {
+            super(name);
+        }
+
+        @Override
+        boolean test(CsvTokenizer tokenizer, FieldParser parser) {
+            return isNull(tokenizer);
+        }
+    }
+
+    private static final class Compare extends ColumnNode {
+        private final Operator operator;
+        private final Literal literal;
+
+        Compare(String name, Operator operator, Literal literal) {
+            super(name);
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        @Override
+        boolean test(CsvTokenizer tokenizer, FieldParser parser) {
+            if (isNull(tokenizer))
+                return false;
+            byte[] bytes = tokenizer.getFieldBytes(column);
+            int start = tokenizer.getFieldStart(column);
+            int length = tokenizer.getFieldLength(column);
+            if (literal.numeric) {
+                if (!parser.tryParseDouble(bytes, start, length))
+                    return false;
+                return operator.matches(Double.compare(parser.getDoubleValue(), literal.number));
+            }
+            return operator.matches(compareBytes(bytes, start, length, literal.bytes));
+        }
+    }
+
+    private static final class In extends ColumnNode {
+        private final Literal[] literals;
+        private final boolean negate;
+
+        In(String name, Literal[] literals, boolean negate) {
+            super(name);
+            this.literals = literals;
+            this.negate = negate;
+        }
+
+        @Override
+        boolean test(CsvTokenizer tokenizer, FieldParser parser) {
+            if (isNull(tokenizer))
+                return false;
+            byte[] bytes = tokenizer.getFieldBytes(column);
+            int start = tokenizer.getFieldStart(column);
+            int length = tokenizer.getFieldLength(column);
+            boolean parsed = false;
+            boolean isNumber = false;
+            for (Literal literal : literals) {
+                if (literal.numeric) {
+                    if (!parsed) {
+                        isNumber = parser.tryParseDouble(bytes, start, length);
+                        parsed = true;
+                    }
+                    if (isNumber && parser.getDoubleValue() == literal.number)
+                        return !negate;
+                } else if (compareBytes(bytes, start, length, literal.bytes) == 0) {
+                    return !negate;
+                }
+            }
+            return negate;
+        }
+    }
+
+    private static int compareBytes(byte[] bytes, int start, int length, byte[] other) {
+        int common = Math.min(length, other.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (bytes[start + i] & 0xff) - (other[i] & 0xff);
+            if (diff != 0)
+                return diff;
+        }
+        return length - other.length;
+    }
+
+    private enum Operator {
+        EQ, NE, LT, LE, GT, GE;
+
+        boolean matches(int comparison) {
+            switch (this) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+    }
+
+    private static final class Literal {
+        private final byte[] bytes;
+        private final boolean numeric;
+        private final double number;
+
+        Literal(String value, boolean numeric) {
+            this.bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.numeric = numeric;
+            this.number = numeric ? Double.parseDouble(value) : 0;
+        }
+    }
+
+    /**
+     * Recursive descent parser, OR binds weaker than AND which binds weaker than NOT.
+     */
+    private static final class Parser {
+        private static final int WORD = 0;
+        private static final int NAME = 1;
+        private static final int STRING = 2;
+        private static final int NUMBER = 3;
+        private static final int SYMBOL = 4;
+        private static final int END = 5;
+
+        private final String expression;
+        private final Set<String> columnNames = new LinkedHashSet<>();
+        private int pos;
+        private int tokenType;
+        private String token;
+
+        Parser(String expression) {
+            this.expression = expression;
+            next();
+        }
+
+        Node parseExpression() {
+            Node node = parseAnd();
+            while (isKeyword("OR")) {
+                next();
+                node = new Or(node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node node = parseUnary();
+            while (isKeyword("AND")) {
+                next();
+                node = new And(node, parseUnary());
+            }
+            return node;
+        }
+
+        private Node parseUnary() {
+            if (isKeyword("NOT")) {
+                next();
+                return new Not(parseUnary());
+            }
+            if (isSymbol("(")) {
+                next();
+                Node node = parseExpression();
+                expectSymbol(")");
+                return node;
+            }
+            return parsePredicate();
+        }
+
+        private Node parsePredicate() {
+            if (tokenType != WORD && tokenType != NAME)
+                throw error("column name expected");
+            String column = token;
+            columnNames.add(column);
+            next();
+
+            if (isKeyword("IS")) {
+                next();
+                boolean negate = isKeyword("NOT");
+                if (negate)
+                    next();
+                expectKeyword("NULL");
+                Node node = new IsNull(column);
+                return negate ? new Not(node) : node;
+            }
+            boolean negate = isKeyword("NOT");
+            if (negate)
+                next();
+            if (isKeyword("IN")) {
+                next();
+                expectSymbol("(");
+                List<Literal> literals = new ArrayList<>();
+                literals.add(parseLiteral());
+                while (isSymbol(",")) {
+                    next();
+                    literals.add(parseLiteral());
+                }
+                expectSymbol(")");
+                return new In(column, literals.toArray(new Literal[0]), negate);
+            }
+            if (negate)
+                throw error("IN expected after NOT");
+
+            Operator operator = parseOperator();
+            return new Compare(column, operator, parseLiteral());
+        }
+
+        private Operator parseOperator() {
+            if (tokenType != SYMBOL)
+                throw error("comparison operator expected");
+            Operator operator;
+            switch (token) {
+                case "=":
+                    operator = Operator.EQ;
+                    break;
+                case "!=":
+                case "<>":
+                    operator = Operator.NE;
+                    break;
+                case "<":
+                    operator = Operator.LT;
+                    break;
+                case "<=":
+                    operator = Operator.LE;
+                    break;
+                case ">":
+                    operator = Operator.GT;
+                    break;
+                case ">=":
+                    operator = Operator.GE;
+                    break;
+                default:
+                    throw error("comparison operator expected");
+            }
+            next();
+            return operator;
+        }
+
+        private Literal parseLiteral() {
+            Literal literal;
+            if (tokenType == NUMBER)
+                literal = new Literal(token, true);
+            else if (tokenType == STRING || tokenType == WORD)
+                literal = new Literal(token, false);
+            else
+                throw error("value expected");
+            next();
+            return literal;
+        }
+
+        void expectEnd() {
+            if (tokenType != END)
+                throw error("unexpected '" + token + "'");
+        }
+
+        private void expectSymbol(String symbol) {
+            if (!isSymbol(symbol))
+                throw error("'" + symbol + "' expected");
+            next();
+        }
+
+        private void expectKeyword(String keyword) {
+            if (!isKeyword(keyword))
+                throw error(keyword + " expected");
+            next();
+        }
+
+        private boolean isKeyword(String keyword) {
+            return tokenType == WORD && token.equalsIgnoreCase(keyword);
+        }
+
+        private boolean isSymbol(String symbol) {
+            return tokenType == SYMBOL && token.equals(symbol);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid filter at position " + pos + ": " + message);
+        }
+
+        private void next() {
+            while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= expression.length()) {
+                tokenType = END;
+                token = "";
+                return;
+            }
+            char c = expression.charAt(pos);
+            int start = pos;
+            if (c == '\'') {
+                tokenType = STRING;
+                token = readQuoted('\'');
+            } else if (c == '"' || c == '`') {
+                tokenType = NAME;
+                token = readQuoted(c);
+            } else if (Character.isDigit(c) || (c == '-' || c == '.') && pos + 1 < expression.length()
+                    && Character.isDigit(expression.charAt(pos + 1))) {
+                pos++;
+                while (pos < expression.length() && isNumberChar(expression.charAt(pos), expression.charAt(pos - 1))) {
+                    pos++;
+                }
+                tokenType = NUMBER;
+                token = expression.substring(start, pos);
+                try {
+                    Double.parseDouble(token);
+                } catch (NumberFormatException e) {
+                    throw error("invalid number '" + token + "'");
+                }
+            } else if (Character.isLetter(c) || c == '_') {
+                while (pos < expression.length() && (Character.isLetterOrDigit(expression.charAt(pos))
+                        || expression.charAt(pos) == '_' || expression.charAt(pos) == '.')) {
+                    pos++;
+                }
+                tokenType = WORD;
+                token = expression.substring(start, pos);
+            } else if ((c == '!' || c == '<' || c == '>') && pos + 1 < expression.length()
+                    && (expression.charAt(pos + 1) == '=' || c == '<' && expression.charAt(pos + 1) == '>')) {
+                pos += 2;
+                tokenType = SYMBOL;
+                token = expression.substring(start, pos);
+            } else if ("=<>(),".indexOf(c) >= 0) {
+                pos++;
+                tokenType = SYMBOL;
+                token = String.valueOf(c);
+            } else {
+                throw error("unexpected character '" + c + "'");
+            }
+        }
+
+        private static boolean isNumberChar(char c, char previous) {
+            return Character.isDigit(c) || c == '.' || c == 'e' || c == 'E'
+                    || (c == '-' || c == '+') && (previous == 'e' || previous == 'E');
+        }
+
+        private String readQuoted(char quote) {
+            StringBuilder value = new StringBuilder();
+            pos++;
+            while (pos < expression.length()) {
+                char c = expression.charAt(pos++);
+                if (c != quote) {
+                    value.append(c);
+                } else if (pos < expression.length() && expression.charAt(pos) == quote) {
+                    // doubled quote is an escaped quote
+                    value.append(c);
+                    pos++;
+                } else {
+                    return value.toString();
+                }
+            }
+            throw error("unterminated quote");
+        }
+    }
+}
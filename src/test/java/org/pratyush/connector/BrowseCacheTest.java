@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.pratyush.connector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.cdap.cdap.etl.api.connector.BrowseDetail;
+import io.cdap.cdap.etl.api.connector.BrowseRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BrowseCacheTest {
+    private HttpServer server;
+    private volatile String etag = "W/\"v1\"";
+    private volatile String listing = "[{\"name\":\"a.csv\",\"dir\":false,\"size\":3,\"mtime\":1000}]";
+    // If-None-Match header of every listing request, "" when there was none
+    private final List<String> conditions = new ArrayList<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/files", this::list);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void list(HttpExchange exchange) throws IOException {
+        String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+        synchronized (conditions) {
+            conditions.add(condition == null ? "" : condition);
+        }
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(condition)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = listing.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void testEntryFreshness() {
+        BrowseDetail detail = BrowseDetail.builder().build();
+        BrowseCache.Entry entry = new BrowseCache.Entry(detail, "W/\"v1\"", "Thu, 01 Jan 1970 00:00:01 GMT", 1000);
+        Assert.assertTrue(entry.isFresh(1999, 1000));
+        Assert.assertFalse(entry.isFresh(2000, 1000));
+
+        BrowseCache.Entry revalidated = entry.revalidated(5000);
+        Assert.assertTrue(revalidated.isFresh(5999, 1000));
+        Assert.assertSame(detail, revalidated.getDetail());
+        Assert.assertEquals(entry.getEtag(), revalidated.getEtag());
+        Assert.assertEquals(entry.getLastModified(), revalidated.getLastModified());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        BrowseCache cache = new BrowseCache(2);
+        BrowseCache.Entry entry = new BrowseCache.Entry(BrowseDetail.builder().build(), null, null, 0);
+        cache.put("a", entry);
+        cache.put("b", entry);
+        Assert.assertNotNull(cache.get("a"));
+        cache.put("c", entry);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testConnectorRevalidatesStaleListing() throws Exception {
+        HTTPConnectorConfig config = new HTTPConnectorConfig("http://localhost:" + server.getAddress().getPort(),
+                "/", false, null, null);
+        Field ttl = HTTPConnectorConfig.class.getDeclaredField("browseCacheTtlSeconds");
+        ttl.setAccessible(true);
+        ttl.set(config, 1L);
+        HTTPConnector connector = new HTTPConnector(config);
+        BrowseCache cache = HTTPConnector.getBrowseCache();
+        BrowseRequest request = BrowseRequest.builder("/files").setLimit(10).build();
+        long hits = cache.getHits();
+        long revalidations = cache.getRevalidations();
+        long misses = cache.getMisses();
+
+        Assert.assertEquals(1, connector.browse(null, request).getEntities().size());
+        Assert.assertEquals(misses + 1, cache.getMisses());
+        // fresh, served without a request
+        Assert.assertEquals(1, connector.browse(null, request).getEntities().size());
+        Assert.assertEquals(hits + 1, cache.getHits());
+        Assert.assertEquals(1, conditions.size());
+
+        // stale, the server confirms the listing with 304
+        Thread.sleep(1100);
+        Assert.assertEquals("a.csv", connector.browse(null, request).getEntities().get(0).getName());
+        Assert.assertEquals(revalidations + 1, cache.getRevalidations());
+        Assert.assertEquals("W/\"v1\"", conditions.get(1));
+
+        // the revalidation restarted the TTL, then the listing changes
+        Assert.assertEquals(1, connector.browse(null, request).getEntities().size());
+        Assert.assertEquals(hits + 2, cache.getHits());
+        etag = "W/\"v2\"";
+        listing = "[{\"name\":\"a.csv\",\"dir\":false},{\"name\":\"b.csv\",\"dir\":false}]";
+        Thread.sleep(1100);
+        Assert.assertEquals(2, connector.browse(null, request).getEntities().size());
+        Assert.assertEquals(misses + 2, cache.getMisses());
+        Assert.assertEquals(3, conditions.size());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.pratyush.connector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pratyush.util.RangeReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FileCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    // file contents by request path, the content doubles as ETag
+    private final Map<String, String> contents = new ConcurrentHashMap<>();
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final HttpGsonHandler httpHandler = new HttpGsonHandler((String) null);
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/files", this::serve);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String content = contents.get(exchange.getRequestURI().getPath());
+        if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("ETag", "\"" + content + "\"");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        downloads.incrementAndGet();
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    public void testDownloadsOnceAndServesHits() throws IOException {
+        contents.put("/files/a.csv", "1,2,3\n");
+        FileCache cache = FileCache.forDirectory(temporaryFolder.newFolder().getPath(), 1024);
+
+        Assert.assertEquals("1,2,3\n", read(cache.open(httpHandler, url("/files/a.csv"))));
+        Assert.assertEquals("1,2,3\n", read(cache.open(httpHandler, url("/files/a.csv"))));
+        Assert.assertEquals(1, downloads.get());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(6, cache.getSizeBytes());
+        Assert.assertEquals(6, cache.getBytesDownloaded());
+
+        // a new version has a new key and is downloaded again
+        contents.put("/files/a.csv", "4,5,6\n");
+        Assert.assertEquals("4,5,6\n", read(cache.open(httpHandler, url("/files/a.csv"))));
+        Assert.assertEquals(2, downloads.get());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testLargeFilesBypassTheCache() throws IOException {
+        contents.put("/files/a.csv", "1,2,3,4,5,6\n");
+        FileCache cache = FileCache.forDirectory(temporaryFolder.newFolder().getPath(), 16);
+
+        try (RangeReader reader = cache.open(httpHandler, url("/files/a.csv"))) {
+            Assert.assertTrue(reader instanceof HttpRangeReader);
+        }
+        Assert.assertEquals(1, cache.getBypasses());
+        Assert.assertEquals(0, downloads.get());
+        Assert.assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedFileIsEvicted() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        FileCache cache = FileCache.forDirectory(directory.getPath(), 40);
+        for (String name : new String[] {"a", "b", "c", "d", "e"}) {
+            contents.put("/files/" + name, name + "00000000\n");
+        }
+        for (String name : new String[] {"a", "b", "c", "d"}) {
+            read(cache.open(httpHandler, url("/files/" + name)));
+        }
+        Assert.assertEquals(40, cache.getSizeBytes());
+
+        // a was used last, b is the one to go
+        read(cache.open(httpHandler, url("/files/a")));
+        read(cache.open(httpHandler, url("/files/e")));
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(40, cache.getSizeBytes());
+        Assert.assertEquals(4, directory.list().length);
+
+        read(cache.open(httpHandler, url("/files/a")));
+        Assert.assertEquals(5, downloads.get());
+        read(cache.open(httpHandler, url("/files/b")));
+        Assert.assertEquals(6, downloads.get());
+    }
+
+    @Test
+    public void testLoadKeepsRecentTemporaryFiles() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        Files.write(directory.resolve("cached"), "1,2,3\n".getBytes(StandardCharsets.UTF_8));
+        Path stale = Files.write(directory.resolve("cached-1.tmp"), new byte[3]);
+        Files.setLastModifiedTime(stale,
+                FileTime.fromMillis(System.currentTimeMillis() - FileCache.STALE_TEMP_MILLIS - 60000));
+        // may be a download still running in another JVM
+        Path recent = Files.write(directory.resolve("cached-2.tmp"), new byte[3]);
+
+        FileCache cache = FileCache.forDirectory(directory.toString(), 1024);
+        Assert.assertFalse(Files.exists(stale));
+        Assert.assertTrue(Files.exists(recent));
+        Assert.assertEquals(6, cache.getSizeBytes());
+    }
+
+    private static String read(RangeReader reader) throws IOException {
+        try (RangeReader closing = reader) {
+            byte[] buffer = new byte[(int) closing.length()];
+            int read = 0;
+            while (read < buffer.length) {
+                int n = closing.read(read, buffer, read, buffer.length - read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+            return new String(buffer, 0, read, StandardCharsets.UTF_8);
+        }
+    }
+}
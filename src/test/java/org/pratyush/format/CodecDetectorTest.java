@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.pratyush.format;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+public class CodecDetectorTest {
+    private static final String CSV = "id,name\n1,\"a\nb\"\n2,c\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCodecFromExtension() throws IOException {
+        Configuration conf = new Configuration();
+        // the files do not exist, the name is enough
+        Assert.assertTrue(CodecDetector.getCodec(conf, new Path("/missing/data.csv.gz")) instanceof GzipCodec);
+        Assert.assertTrue(CodecDetector.getCodec(conf, new Path("/missing/DATA.CSV.BZ2")) instanceof BZip2Codec);
+    }
+
+    @Test
+    public void testCodecFromMagicBytes() throws IOException {
+        Configuration conf = new Configuration();
+        Assert.assertTrue(CodecDetector.getCodec(conf, write("export", gzip(CSV))) instanceof GzipCodec);
+        Assert.assertTrue(CodecDetector.getCodec(conf, write("export.dat", bzip2(CSV))) instanceof BZip2Codec);
+        Assert.assertNull(CodecDetector.getCodec(conf, write("plain", bytes(CSV))));
+        // plain text names are not opened, whatever their content
+        Assert.assertNull(CodecDetector.getCodec(conf, write("data.csv", gzip(CSV))));
+    }
+
+    @Test
+    public void testOpenDecompresses() throws IOException {
+        Configuration conf = new Configuration();
+        Assert.assertEquals(CSV, read(CodecDetector.open(conf, write("data.csv.gz", gzip(CSV)))));
+        Assert.assertEquals(CSV, read(CodecDetector.open(conf, write("export", bzip2(CSV)))));
+        Assert.assertEquals(CSV, read(CodecDetector.open(conf, write("data.csv", bytes(CSV)))));
+    }
+
+    @Test
+    public void testDecompressStream() throws IOException {
+        Assert.assertEquals(CSV, read(CodecDetector.decompress(new ByteArrayInputStream(gzip(CSV)), "download")));
+        Assert.assertEquals(CSV, read(CodecDetector.decompress(new ByteArrayInputStream(bzip2(CSV)), "data.bz2")));
+        Assert.assertEquals(CSV, read(CodecDetector.decompress(new ByteArrayInputStream(bytes(CSV)), "download")));
+        // too short for any magic
+        Assert.assertEquals("1", read(CodecDetector.decompress(new ByteArrayInputStream(bytes("1")), "download")));
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        File file = temporaryFolder.newFile(name);
+        Files.write(file.toPath(), content);
+        return new Path(file.toURI());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes(text));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bzip2(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('B');
+        out.write('Z');
+        try (CBZip2OutputStream bzip2 = new CBZip2OutputStream(out)) {
+            bzip2.write(bytes(text));
+        }
+        return out.toByteArray();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CsvRecordReaderTest {
+    private static final String HEADER = "id,note,tail\n\"generated\nby test\",,\n";
+    private static final String FOOTER = "\"rows\n12\",,\nend,,\n";
+    private static final int RECORDS = 12;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSplitsResyncOnQuotedNewlines() throws IOException {
+        String csv = records(0, RECORDS);
+        Path path = write(csv);
+        Configuration conf = new Configuration();
+        List<String> expected = read(conf, path, 0, csv.length());
+        Assert.assertEquals(RECORDS, expected.size());
+        Assert.assertEquals("0:0,\"note 0\nsecond \"\"part\"\", 0\",\"a, b\"", expected.get(0));
+
+        for (int cut = 1; cut < csv.length(); cut++) {
+            Assert.assertEquals("cut at " + cut, expected, read(conf, path, 0, cut, csv.length()));
+        }
+        for (int first = 1; first < csv.length(); first += 5) {
+            for (int second = first + 1; second < csv.length(); second += 7) {
+                Assert.assertEquals("cut at " + first + " and " + second, expected,
+                        read(conf, path, 0, first, second, csv.length()));
+            }
+        }
+    }
+
+    @Test
+    public void testHeaderAndFooterAcrossSplits() throws IOException {
+        String csv = HEADER + records(0, RECORDS) + FOOTER;
+        Path path = write(csv);
+        Configuration conf = new Configuration();
+        conf.setInt(CsvInputFormat.SKIP_LEADING_LINES, 2);
+        conf.setInt(CsvInputFormat.SKIP_TRAILING_LINES, 2);
+        List<String> expected = read(conf, path, 0, csv.length());
+        Assert.assertEquals(RECORDS, expected.size());
+        Assert.assertEquals(HEADER.length() + ":0,\"note 0\nsecond \"\"part\"\", 0\",\"a, b\"", expected.get(0));
+        Assert.assertEquals(RECORDS - 1, Integer.parseInt(values(expected).get(RECORDS - 1).split(",")[0]));
+
+        for (int cut = 1; cut < csv.length(); cut++) {
+            Assert.assertEquals("cut at " + cut, expected, read(conf, path, 0, cut, csv.length()));
+        }
+        for (int first = 1; first < csv.length(); first += 5) {
+            for (int second = first + 1; second < csv.length(); second += 7) {
+                Assert.assertEquals("cut at " + first + " and " + second, expected,
+                        read(conf, path, 0, first, second, csv.length()));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordLimitStopsReader() throws IOException {
+        String csv = HEADER + records(0, RECORDS) + FOOTER;
+        Path path = write(csv);
+        Job job = Job.getInstance(new Configuration());
+        job.getConfiguration().setInt(CsvInputFormat.SKIP_LEADING_LINES, 2);
+        job.getConfiguration().setInt(CsvInputFormat.SKIP_TRAILING_LINES, 2);
+        CsvInputFormat.setRecordLimit(job, path, 3);
+        List<String> limited = values(read(job.getConfiguration(), path, 0, csv.length()));
+        Assert.assertEquals(records(0, 3), String.join("\n", limited) + "\n");
+
+        CsvInputFormat.setRecordLimit(job, path, RECORDS + 5);
+        Assert.assertEquals(RECORDS, read(job.getConfiguration(), path, 0, csv.length()).size());
+
+        CsvInputFormat.setRecordLimit(job, path, 0);
+        Assert.assertEquals(0, read(job.getConfiguration(), path, 0, csv.length()).size());
+    }
+
+    @Test
+    public void testRecordLimitWithinPlannedRange() throws IOException {
+        String csv = HEADER + records(0, RECORDS) + FOOTER;
+        Path path = write(csv);
+        Job job = Job.getInstance(new Configuration());
+        job.getConfiguration().setInt(CsvInputFormat.SKIP_LEADING_LINES, 2);
+        job.getConfiguration().setInt(CsvInputFormat.SKIP_TRAILING_LINES, 2);
+        // like a bounded read: the leading lines, the limit and as many records as are dropped at the end
+        long cutEnd = HEADER.length() + records(0, 5).length();
+        CsvInputFormat.setRange(job, path, 0, cutEnd);
+        CsvInputFormat.setRecordLimit(job, path, 3);
+        List<String> limited = values(read(job.getConfiguration(), path, 0, cutEnd));
+        Assert.assertEquals(records(0, 3), String.join("\n", limited) + "\n");
+    }
+
+    @Test
+    public void testBzip2SplitsMatchSingleSplit() throws IOException {
+        int records = 20000;
+        File file = temporaryFolder.newFile("data.csv.bz2");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{'B', 'Z'});
+            // 100k blocks, so the file has about ten of them
+            try (CBZip2OutputStream bzip2 = new CBZip2OutputStream(out, 1)) {
+                bzip2.write(records(0, records).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Path path = new Path(file.toURI());
+        long length = file.length();
+        Configuration conf = new Configuration();
+        List<String> expected = values(read(conf, path, 0, length));
+        Assert.assertEquals(records, expected.size());
+        Assert.assertEquals(records - 1, Integer.parseInt(expected.get(records - 1).split(",")[0]));
+
+        for (long cut = 1; cut < length; cut += length / 97) {
+            Assert.assertEquals("cut at " + cut, expected, values(read(conf, path, 0, cut, length)));
+        }
+        for (long first = 1; first < length; first += length / 7) {
+            long second = first + length / 5;
+            if (second < length)
+                Assert.assertEquals("cut at " + first + " and " + second, expected,
+                        values(read(conf, path, 0, first, second, length)));
+        }
+    }
+
+    @Test
+    public void testCheckpointedRangeReadsAppendedRecords() throws IOException {
+        String csv = HEADER + records(0, RECORDS);
+        Path path = write(csv + "12,\"unterminated");
+        java.nio.file.Path file = new File(path.toUri()).toPath();
+        byte[] data = Files.readAllBytes(file);
+        long checkpoint = RecordBoundaryFinder.findLastRecordEnd(new ByteArrayInputStream(data), 0, data.length,
+                new byte[]{','}, true, false);
+        Assert.assertEquals(csv.length(), checkpoint);
+
+        // the unterminated record is completed by the next append
+        Files.write(file, ("\",x,y\n" + records(13, 15)).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        long length = Files.size(file);
+        Job job = Job.getInstance(new Configuration());
+        job.getConfiguration().setInt(CsvInputFormat.SKIP_LEADING_LINES, 2);
+        CsvInputFormat.setRange(job, path, checkpoint, length);
+        List<String> appended = values(read(job.getConfiguration(), path, checkpoint, length));
+        Assert.assertEquals(3, appended.size());
+        Assert.assertEquals("12,\"unterminated\",x,y", appended.get(0));
+        Assert.assertTrue(appended.get(2).startsWith("14,"));
+    }
+
+    /**
+     * Records with quoted line breaks, escaped quotes and quoted delimiters, numbered from {@code from}.
+     */
+    private static String records(int from, int to) {
+        StringBuilder csv = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            csv.append(i).append(",\"note ").append(i).append("\nsecond \"\"part\"\", ").append(i)
+                    .append("\",\"a, b\"\n");
+        }
+        return csv.toString();
+    }
+
+    private Path write(String csv) throws IOException {
+        File file = temporaryFolder.newFile("data.csv");
+        Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+        return new Path(file.toURI());
+    }
+
+    /**
+     * Reads the file in splits cut at {@code offsets}, as "key:value" strings.
+     */
+    private static List<String> read(Configuration conf, Path path, long... offsets) throws IOException {
+        List<String> records = new ArrayList<>();
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            try (CsvRecordReader reader = new CsvRecordReader()) {
+                reader.initialize(new FileSplit(path, offsets[i], offsets[i + 1] - offsets[i], new String[0]),
+                        new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+                while (reader.nextKeyValue()) {
+                    records.add(reader.getCurrentKey().get() + ":" + reader.getCurrentValue());
+                }
+            }
+        }
+        return records;
+    }
+
+    private static List<String> values(List<String> records) {
+        List<String> values = new ArrayList<>();
+        for (String record : records) {
+            values.add(record.substring(record.indexOf(':') + 1));
+        }
+        return values;
+    }
+}
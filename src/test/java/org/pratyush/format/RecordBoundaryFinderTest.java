@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.format;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class RecordBoundaryFinderTest {
+    private static final byte[] COMMA = {','};
+
+    @Test
+    public void testFindRecordStartOutsideQuotes() throws IOException {
+        byte[] csv = bytes("id,name\n1,one\n2,two\n");
+        Assert.assertEquals(6, findRecordStart(csv, 2));
+        Assert.assertEquals(1, findRecordStart(csv, 7));
+    }
+
+    @Test
+    public void testFindRecordStartSkipsQuotedNewlines() throws IOException {
+        byte[] csv = bytes("1,\"first\nsecond \"\"part\"\"\",x\n2,\"a\nb\",y\n");
+        // starting right after the line break inside the quoted field of the first record
+        int offset = "1,\"first\n".length();
+        Assert.assertEquals("1,\"first\nsecond \"\"part\"\"\",x\n".length() - offset, findRecordStart(csv, offset));
+        // starting inside the quoted field, before its line break
+        Assert.assertEquals("1,\"first\nsecond \"\"part\"\"\",x\n".length() - 4, findRecordStart(csv, 4));
+    }
+
+    @Test
+    public void testFindRecordStartWithoutBoundary() throws IOException {
+        Assert.assertEquals(-1, findRecordStart(bytes("1,one\n2,two"), 7));
+    }
+
+    @Test
+    public void testFindLastRecordEndStopsBeforeUnterminatedRecord() throws IOException {
+        byte[] csv = bytes("a,b\nc,d\ne,f");
+        Assert.assertEquals(8, findLastRecordEnd(csv, 0, csv.length, false));
+        Assert.assertEquals(csv.length, findLastRecordEnd(csv, 0, csv.length, true));
+        Assert.assertEquals(8, findLastRecordEnd(csv, 4, csv.length, false));
+    }
+
+    @Test
+    public void testFindLastRecordEndKeepsQuotedNewlines() throws IOException {
+        byte[] csv = bytes("a,\"x\ny\"\nb,\"open\n");
+        Assert.assertEquals(8, findLastRecordEnd(csv, 0, csv.length, false));
+        // the line break inside the open quote does not end the record, only an unchanged file does
+        Assert.assertEquals(csv.length, findLastRecordEnd(csv, 0, csv.length, true));
+    }
+
+    @Test
+    public void testFindLastRecordEndIgnoresBytesAfterEnd() throws IOException {
+        byte[] csv = bytes("a\nbb\ncc\n");
+        Assert.assertEquals(5, findLastRecordEnd(csv, 0, 6, false));
+        Assert.assertEquals(5, findLastRecordEnd(csv, 0, 6, true));
+        Assert.assertEquals(2, findLastRecordEnd(csv, 2, 4, true));
+    }
+
+    private static long findRecordStart(byte[] csv, int offset) throws IOException {
+        return RecordBoundaryFinder.findRecordStart(new ByteArrayInputStream(csv, offset, csv.length - offset), COMMA,
+                true);
+    }
+
+    private static long findLastRecordEnd(byte[] csv, int start, int end, boolean endIsRecordEnd) throws IOException {
+        return RecordBoundaryFinder.findLastRecordEnd(new ByteArrayInputStream(csv, start, csv.length - start), start,
+                end, COMMA, true, endIsRecordEnd);
+    }
+
+    private static byte[] bytes(String csv) {
+        return csv.getBytes(StandardCharsets.UTF_8);
+    }
+}
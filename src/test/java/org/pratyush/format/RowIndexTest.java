@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.pratyush.format;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pratyush.util.LocalRangeReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class RowIndexTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Writes {@code rows} records of 10 bytes each, record {@code i} starts at {@code i * 10}.
+     */
+    private File writeRows(int rows) throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            csv.append(String.format("%03d,xxxxx\n", i));
+        }
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static RowIndex build(File file, int interval) throws IOException {
+        try (LocalRangeReader reader = new LocalRangeReader(file.getPath())) {
+            return RowIndex.build(reader, 1000, ",", true, interval);
+        }
+    }
+
+    @Test
+    public void testBuildIndexesEveryIntervalRecord() throws IOException {
+        RowIndex index = build(writeRows(10), 3);
+        Assert.assertEquals(10, index.getRowCount());
+        Assert.assertEquals(3, index.getInterval());
+        Assert.assertEquals(0, index.getIndexedRow(2));
+        Assert.assertEquals(0, index.getOffset(2));
+        Assert.assertEquals(3, index.getIndexedRow(5));
+        Assert.assertEquals(30, index.getOffset(5));
+        Assert.assertEquals(9, index.getIndexedRow(9));
+        Assert.assertEquals(90, index.getOffset(9));
+        // rows past the end resolve to the last indexed record
+        Assert.assertEquals(9, index.getIndexedRow(100));
+        Assert.assertEquals(90, index.getOffset(100));
+    }
+
+    @Test
+    public void testQuotedLineBreaksStayInTheirRecord() throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), "a,b\n1,\"x\ny\"\n2,z\n".getBytes(StandardCharsets.UTF_8));
+        RowIndex index = build(file, 1);
+        Assert.assertEquals(3, index.getRowCount());
+        Assert.assertEquals(4, index.getOffset(1));
+        Assert.assertEquals(12, index.getOffset(2));
+    }
+
+    @Test
+    public void testWriteReadRoundTrip() throws IOException {
+        RowIndex index = build(writeRows(250), 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+
+        RowIndex read = RowIndex.read(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertNotNull(read);
+        Assert.assertEquals(250, read.getRowCount());
+        Assert.assertEquals(7, read.getInterval());
+        for (long row = 0; row < 250; row++) {
+            Assert.assertEquals(index.getOffset(row), read.getOffset(row));
+        }
+        Assert.assertTrue(read.matches(2500, 1000, ",", true));
+        Assert.assertTrue(read.matches(2500, -1, ",", true));
+        Assert.assertFalse(read.matches(2510, 1000, ",", true));
+        Assert.assertFalse(read.matches(2500, 2000, ",", true));
+        Assert.assertFalse(read.matches(2500, 1000, ";", true));
+        Assert.assertFalse(read.matches(2500, 1000, ",", false));
+    }
+
+    @Test
+    public void testReadRejectsOtherContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        build(writeRows(20), 3).write(out);
+        byte[] bytes = out.toByteArray();
+
+        Assert.assertNull(RowIndex.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1))));
+        Assert.assertNull(RowIndex.read(new ByteArrayInputStream(Arrays.copyOf(bytes, 10))));
+        Assert.assertNull(RowIndex.read(new ByteArrayInputStream("a,b\n1,2\n".getBytes(StandardCharsets.UTF_8))));
+        Assert.assertNull(RowIndex.read(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    public void testSplitBoundariesFallOnIndexedRecords() throws IOException {
+        RowIndex index = build(writeRows(100), 10);
+        // 25 rows per split, rounded down to whole intervals
+        Assert.assertArrayEquals(new long[]{0, 200, 400, 600, 800, 1000}, index.getSplitBoundaries(250));
+        Assert.assertArrayEquals(new long[]{0, 500, 1000}, index.getSplitBoundaries(500));
+        // less than an interval per split still cuts on every indexed record
+        Assert.assertArrayEquals(new long[]{0, 100, 200, 300, 400, 500, 600, 700, 800, 900, 1000},
+                index.getSplitBoundaries(10));
+        Assert.assertArrayEquals(new long[]{0, 1000}, index.getSplitBoundaries(1000));
+    }
+
+    @Test
+    public void testEmptyFileIsOneRange() throws IOException {
+        RowIndex index = build(temporaryFolder.newFile(), 10);
+        Assert.assertEquals(0, index.getRowCount());
+        Assert.assertEquals(0, index.getOffset(5));
+        Assert.assertArrayEquals(new long[]{0, 0}, index.getSplitBoundaries(1));
+    }
+
+    @Test
+    public void testLoadOrBuildKeepsCurrentSidecar() throws IOException {
+        File file = writeRows(30);
+        File sidecar = new File(file.getParentFile(), RowIndex.getSidecarName(file.getName()));
+        RowIndex index = RowIndex.loadOrBuild(file.getPath(), 300, 1000, ",", false);
+        Assert.assertEquals(30, index.getRowCount());
+        Assert.assertTrue(sidecar.exists());
+
+        // a current sidecar is used as is, even if it no longer agrees with the file
+        Files.write(file.toPath(), new byte[300]);
+        Assert.assertEquals(30, RowIndex.loadOrBuild(file.getPath(), 300, 1000, ",", false).getRowCount());
+        // another modification time rebuilds it
+        Assert.assertEquals(1, RowIndex.loadOrBuild(file.getPath(), 300, 2000, ",", false).getRowCount());
+        try (InputStream in = Files.newInputStream(sidecar.toPath())) {
+            Assert.assertTrue(RowIndex.read(in).matches(300, 2000, ",", false));
+        }
+    }
+}
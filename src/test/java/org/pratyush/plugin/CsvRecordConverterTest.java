@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.pratyush.plugin;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+import org.pratyush.util.RowFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+public class CsvRecordConverterTest {
+    private static final Schema SCHEMA = Schema.recordOf("record",
+            Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+            Schema.Field.of("total", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+            Schema.Field.of("price", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+            Schema.Field.of("ratio", Schema.of(Schema.Type.FLOAT)),
+            Schema.Field.of("active", Schema.of(Schema.Type.BOOLEAN)),
+            Schema.Field.of("day", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))),
+            Schema.Field.of("at", Schema.nullableOf(Schema.of(Schema.LogicalType.TIMESTAMP_MICROS))),
+            Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+
+    @Test
+    public void testConvertsTypedFields() {
+        CsvRecordConverter converter = new CsvRecordConverter(SCHEMA, ",", null, null, 8);
+        StructuredRecord record = convert(converter,
+                "7,12345678901,9.5,0.25,true,2024-02-29,2024-02-29 12:30:00.5,\"a, \"\"b\"\"\"");
+        Assert.assertNotNull(converter.getError(), record);
+        Assert.assertEquals(7, (int) record.get("id"));
+        Assert.assertEquals(12345678901L, (long) record.get("total"));
+        Assert.assertEquals(9.5, record.get("price"), 0);
+        Assert.assertEquals(0.25f, record.get("ratio"), 0);
+        Assert.assertEquals(true, record.get("active"));
+        Assert.assertEquals((int) LocalDate.parse("2024-02-29").toEpochDay(), (int) record.get("day"));
+        Assert.assertEquals(ChronoUnit.MICROS.between(Instant.EPOCH, Instant.parse("2024-02-29T12:30:00.500Z")),
+                (long) record.get("at"));
+        Assert.assertEquals("a, \"b\"", record.get("name"));
+    }
+
+    @Test
+    public void testEmptyValues() {
+        CsvRecordConverter converter = new CsvRecordConverter(SCHEMA, ",", null, null, 8);
+        // nullable fields take null, strings stay empty
+        StructuredRecord record = convert(converter, "1,,,1.5,false,,,");
+        Assert.assertNotNull(converter.getError(), record);
+        Assert.assertNull(record.get("total"));
+        Assert.assertNull(record.get("day"));
+        Assert.assertEquals("", record.get("name"));
+
+        Assert.assertNull(convert(converter, ",,,1.5,false,,,"));
+        Assert.assertEquals("Value '' of field 'id' is not of the expected type.", converter.getError());
+    }
+
+    @Test
+    public void testMalformedRecords() {
+        CsvRecordConverter converter = new CsvRecordConverter(SCHEMA, ",", null, null, 8);
+        Assert.assertNull(convert(converter, "1,2,3,4,true,2024-01-01,2024-01-01T00:00:00"));
+        Assert.assertEquals("Expected 8 fields but found 7", converter.getError());
+        Assert.assertNull(convert(converter, "1,2,3,4,true,2024-01-01,2024-01-01T00:00:00,a,extra"));
+        Assert.assertEquals("Expected 8 fields but found more", converter.getError());
+        Assert.assertNull(convert(converter, "1,2,3,4,yes,,,a"));
+        Assert.assertEquals("Value 'yes' of field 'active' is not of the expected type.", converter.getError());
+        Assert.assertNull(convert(converter, "1,2,3,4,true,2024-02-30,,a"));
+        Assert.assertEquals("Value '2024-02-30' of field 'day' is not of the expected type.", converter.getError());
+        // the error is cleared by the next record
+        Assert.assertNotNull(convert(converter, "1,2,3,4,true,,,a"));
+        Assert.assertNull(converter.getError());
+    }
+
+    @Test
+    public void testMappedColumnsAndFilter() {
+        Schema schema = Schema.recordOf("record",
+                Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+                Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+        RowFilter filter = RowFilter.parse("price > 10");
+        filter.bind(new String[]{"id", "price", "name", "note"});
+        CsvRecordConverter converter = new CsvRecordConverter(schema, ",", new int[]{2, 0}, filter, 0);
+
+        StructuredRecord record = convert(converter, "5,11,five,\"unread \"\"note\"\"\"");
+        Assert.assertNotNull(converter.getError(), record);
+        Assert.assertEquals("five", record.get("name"));
+        Assert.assertEquals(5L, (long) record.get("id"));
+        // columns after the last mapped one do not matter without a field count
+        Assert.assertNotNull(convert(converter, "6,12,six"));
+
+        // rejected by the filter is not malformed
+        Assert.assertNull(convert(converter, "7,9,seven,x"));
+        Assert.assertNull(converter.getError());
+        Assert.assertNull(convert(converter, "8,20"));
+        Assert.assertEquals("Expected at least 3 fields but found 2", converter.getError());
+    }
+
+    private static StructuredRecord convert(CsvRecordConverter converter, String line) {
+        // the record sits in a larger buffer, like the bytes of a reused Text
+        byte[] bytes = (line + "\ngarbage").getBytes(StandardCharsets.UTF_8);
+        return converter.convert(bytes, line.getBytes(StandardCharsets.UTF_8).length);
+    }
+}
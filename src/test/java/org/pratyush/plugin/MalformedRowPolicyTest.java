@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.pratyush.plugin;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.dataset.lib.KeyValue;
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.InvalidEntry;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class MalformedRowPolicyTest {
+
+    @Test
+    public void testFailPolicyThrowsOnFirstRow() throws Exception {
+        LocalFileBatchSource source = source(LocalFilePluginConfig.POLICY_FAIL, Long.MAX_VALUE);
+        CollectingEmitter emitter = new CollectingEmitter();
+        try {
+            source.transform(malformed(10, "Expected 3 fields but found 2"), emitter);
+            Assert.fail("Malformed row passed");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Malformed row at /data/in.csv@10: Expected 3 fields but found 2", e.getMessage());
+        }
+        Assert.assertTrue(emitter.errors.isEmpty());
+    }
+
+    @Test
+    public void testSkipPolicyDropsRows() throws Exception {
+        LocalFileBatchSource source = source(LocalFilePluginConfig.POLICY_SKIP, Long.MAX_VALUE);
+        CollectingEmitter emitter = new CollectingEmitter();
+        for (int i = 0; i < 5; i++) {
+            source.transform(malformed(i, "bad"), emitter);
+        }
+        Assert.assertTrue(emitter.records.isEmpty());
+        Assert.assertTrue(emitter.errors.isEmpty());
+    }
+
+    @Test
+    public void testRoutePolicyEmitsErrorRecords() throws Exception {
+        LocalFileBatchSource source = source(LocalFilePluginConfig.POLICY_ROUTE, Long.MAX_VALUE);
+        CollectingEmitter emitter = new CollectingEmitter();
+        source.transform(malformed(42, "Value 'x' of field 'id' is not of the expected type."), emitter);
+
+        Assert.assertEquals(1, emitter.errors.size());
+        InvalidEntry<StructuredRecord> error = emitter.errors.get(0);
+        Assert.assertEquals(LocalFileBatchSource.MALFORMED_ROW_ERROR_CODE, error.getErrorCode());
+        Assert.assertEquals("/data/in.csv@42: Value 'x' of field 'id' is not of the expected type.",
+                error.getErrorMsg());
+        StructuredRecord record = error.getInvalidRecord();
+        Assert.assertEquals(MalformedRow.SCHEMA, record.getSchema());
+        Assert.assertEquals("/data/in.csv", record.get("file"));
+        Assert.assertEquals(42L, (long) record.get("offset"));
+        Assert.assertEquals("Value 'x' of field 'id' is not of the expected type.", record.get("reason"));
+        Assert.assertEquals("x,y", record.get("body"));
+        Assert.assertTrue(emitter.records.isEmpty());
+    }
+
+    @Test
+    public void testLimitFailsOnceExceeded() throws Exception {
+        LocalFileBatchSource source = source(LocalFilePluginConfig.POLICY_ROUTE, 2);
+        CollectingEmitter emitter = new CollectingEmitter();
+        source.transform(malformed(1, "bad"), emitter);
+        source.transform(malformed(2, "bad"), emitter);
+        try {
+            source.transform(malformed(3, "bad"), emitter);
+            Assert.fail("Malformed row limit not enforced");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("More than 2 malformed rows, last at /data/in.csv@3: bad", e.getMessage());
+        }
+        Assert.assertEquals(2, emitter.errors.size());
+    }
+
+    /**
+     * A source as {@code initialize} leaves it for the reader engine, which hands malformed rows to the stage.
+     */
+    private static LocalFileBatchSource source(String policy, long maxMalformedRows) throws Exception {
+        LocalFileBatchSource source = new LocalFileBatchSource(null);
+        set(source, "malformedRowPolicy", policy);
+        set(source, "maxMalformedRows", maxMalformedRows);
+        return source;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static KeyValue<LongWritable, Object> malformed(long offset, String reason) {
+        return new KeyValue<>(new LongWritable(offset),
+                new MalformedRow(new Path("/data/in.csv"), offset, reason, "x,y"));
+    }
+
+    private static class CollectingEmitter implements Emitter<StructuredRecord> {
+        private final List<StructuredRecord> records = new ArrayList<>();
+        private final List<InvalidEntry<StructuredRecord>> errors = new ArrayList<>();
+
+        @Override
+        public void emit(StructuredRecord value) {
+            records.add(value);
+        }
+
+        @Override
+        public void emitError(InvalidEntry<StructuredRecord> invalidEntry) {
+            errors.add(invalidEntry);
+        }
+
+        @Override
+        public void emitAlert(Map<String, String> payload) {
+        }
+    }
+}
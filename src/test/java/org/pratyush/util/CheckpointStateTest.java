@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class CheckpointStateTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testJsonRoundTrip() {
+        CheckpointState state = new CheckpointState();
+        state.put(new CheckpointState.Entry("/data/a.csv", 120, 1000, 100));
+        state.put(new CheckpointState.Entry("/data/b.csv", 50, 2000, 50));
+
+        CheckpointState loaded = CheckpointState.fromJson(state.toJson());
+        Assert.assertEquals(2, loaded.getEntries().size());
+        assertEntry(state.get("/data/a.csv"), loaded.get("/data/a.csv"));
+        assertEntry(state.get("/data/b.csv"), loaded.get("/data/b.csv"));
+        Assert.assertNull(loaded.get("/data/c.csv"));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File dir = temporaryFolder.newFolder();
+        String stateFile = new File(dir, "state/checkpoint.json").getPath();
+        Assert.assertTrue(CheckpointState.load(stateFile).getEntries().isEmpty());
+
+        CheckpointState state = new CheckpointState();
+        state.put(new CheckpointState.Entry("/data/a.csv", 120, 1000, 100));
+        state.save(stateFile);
+        assertEntry(state.get("/data/a.csv"), CheckpointState.load(stateFile).get("/data/a.csv"));
+
+        // a later run moves the offset of the file on and replaces the state
+        CheckpointState next = CheckpointState.load(stateFile);
+        next.put(new CheckpointState.Entry("/data/a.csv", 240, 3000, 240));
+        next.save(stateFile);
+        CheckpointState loaded = CheckpointState.load(stateFile);
+        Assert.assertEquals(1, loaded.getEntries().size());
+        assertEntry(next.get("/data/a.csv"), loaded.get("/data/a.csv"));
+        // no temporary files are left next to the state
+        Assert.assertArrayEquals(new String[]{"checkpoint.json"}, new File(dir, "state").list());
+    }
+
+    private static void assertEntry(CheckpointState.Entry expected, CheckpointState.Entry actual) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getPath(), actual.getPath());
+        Assert.assertEquals(expected.getSize(), actual.getSize());
+        Assert.assertEquals(expected.getModificationTime(), actual.getModificationTime());
+        Assert.assertEquals(expected.getOffset(), actual.getOffset());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import io.cdap.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class CsvSchemaInferrerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testInferFromLines() {
+        CsvSchemaInferrer inferrer = new CsvSchemaInferrer(",", CsvSchemaInferrer.DEFAULT_SAMPLE_SIZE, 1);
+        Schema schema = inferrer.infer(Arrays.asList(
+                "flag,small,big,ratio,day,at,name,empty,maybe",
+                "true,1,3000000000,1,2023-01-02,2023-01-02T03:04:05Z,a,,1",
+                "FALSE,-2,4,2.5,2024-02-29,2023-01-02 03:04:05.123,\"b,c\",,",
+                // rows with another field count do not take part
+                "x,y"));
+        Schema expected = Schema.recordOf("event",
+                Schema.Field.of("flag", Schema.of(Schema.Type.BOOLEAN)),
+                Schema.Field.of("small", Schema.of(Schema.Type.INT)),
+                Schema.Field.of("big", Schema.of(Schema.Type.LONG)),
+                Schema.Field.of("ratio", Schema.of(Schema.Type.DOUBLE)),
+                Schema.Field.of("day", Schema.of(Schema.LogicalType.DATE)),
+                Schema.Field.of("at", Schema.of(Schema.LogicalType.TIMESTAMP_MICROS)),
+                Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+                Schema.Field.of("empty", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                Schema.Field.of("maybe", Schema.nullableOf(Schema.of(Schema.Type.INT))));
+        Assert.assertEquals(expected, schema);
+    }
+
+    @Test
+    public void testInferFromStreamSkipsLines() throws IOException {
+        String csv = "# exported\nid,name\n1,a\n2,b\n";
+        Schema schema = new CsvSchemaInferrer(",", 10, 1)
+                .infer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 1);
+        Assert.assertEquals(Schema.recordOf("event",
+                Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+                Schema.Field.of("name", Schema.of(Schema.Type.STRING))), schema);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInferWithoutHeader() throws IOException {
+        new CsvSchemaInferrer(",", 10, 1).infer(new ByteArrayInputStream(new byte[0]), 0);
+    }
+
+    @Test
+    public void testSampleCoversWholeFile() throws IOException {
+        // fixed width rows, one value that is not an int sits right after the start of the last sampled range
+        int rows = 40000;
+        int oddRow = rows * 3 / 4 + 10;
+        StringBuilder csv = new StringBuilder("id,value\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(String.format("%06d,%s\n", i, i == oddRow ? "0.5" : "007"));
+        }
+        File file = temporaryFolder.newFile("data.csv");
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (MappedRangeReader reader = new MappedRangeReader(file.getPath())) {
+            Schema parallel = new CsvSchemaInferrer(",", 1000, 4).infer(reader, 0);
+            Assert.assertEquals(Schema.of(Schema.Type.DOUBLE), parallel.getField("value").getSchema());
+            Assert.assertEquals(Schema.of(Schema.Type.INT), parallel.getField("id").getSchema());
+        }
+        // the head of the file alone misses it
+        try (MappedRangeReader reader = new MappedRangeReader(file.getPath())) {
+            Schema head = new CsvSchemaInferrer(",", 1000, 1).infer(reader, 0);
+            Assert.assertEquals(Schema.of(Schema.Type.INT), head.getField("value").getSchema());
+        }
+    }
+}
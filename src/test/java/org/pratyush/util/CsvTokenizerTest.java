@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class CsvTokenizerTest {
+
+    @Test
+    public void testPlainAndEmptyFields() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",");
+        assertFields(tokenizer, "a,,c,", "a", "", "c", "");
+        assertFields(tokenizer, "", "");
+        assertFields(tokenizer, "one\r", "one");
+    }
+
+    @Test
+    public void testQuotedFields() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",");
+        assertFields(tokenizer, "\"a,b\",\"say \"\"hi\"\"\",\"\"", "a,b", "say \"hi\"", "");
+        assertFields(tokenizer, "\"line\nbreak\",x", "line\nbreak", "x");
+        // text after the closing quote is kept, an unterminated quote takes the rest of the record
+        assertFields(tokenizer, "\"ab\"cd,\"open,end", "abcd", "open,end");
+        assertFields(tokenizer, "\"a\"\"b,c", "a\"b,c");
+    }
+
+    @Test
+    public void testMultiByteDelimiter() {
+        CsvTokenizer tokenizer = new CsvTokenizer("||");
+        assertFields(tokenizer, "a||\"b||c\"||d|e", "a", "b||c", "d|e");
+    }
+
+    @Test
+    public void testSelectedFields() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",");
+        tokenizer.setSelectedFields(new boolean[]{false, true});
+        byte[] record = bytes("\"x\"\"y\",\"b\"\"c\",d");
+        Assert.assertEquals(2, tokenizer.tokenize(record, record.length));
+        Assert.assertTrue(tokenizer.hasMoreFields());
+        Assert.assertEquals("b\"c", tokenizer.getString(1));
+
+        record = bytes("a,b");
+        Assert.assertEquals(2, tokenizer.tokenize(record, record.length));
+        Assert.assertFalse(tokenizer.hasMoreFields());
+    }
+
+    @Test
+    public void testEmptySelection() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",");
+        tokenizer.setSelectedFields(new boolean[0]);
+        byte[] record = bytes("\"a\",b");
+        Assert.assertEquals(0, tokenizer.tokenize(record, record.length));
+        Assert.assertTrue(tokenizer.hasMoreFields());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testFieldOutOfRange() {
+        CsvTokenizer tokenizer = new CsvTokenizer(",");
+        byte[] record = bytes("a,b");
+        tokenizer.tokenize(record, record.length);
+        tokenizer.getString(2);
+    }
+
+    private static void assertFields(CsvTokenizer tokenizer, String record, String... expected) {
+        byte[] bytes = bytes(record);
+        Assert.assertEquals(expected.length, tokenizer.tokenize(bytes, bytes.length));
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], tokenizer.getString(i));
+        }
+    }
+
+    private static byte[] bytes(String record) {
+        return record.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+public class FieldParserTest {
+    private final FieldParser parser = new FieldParser();
+
+    @Test
+    public void testLong() {
+        assertLong("0", 0);
+        assertLong("+42", 42);
+        assertLong("-9223372036854775808", Long.MIN_VALUE);
+        assertLong("9223372036854775807", Long.MAX_VALUE);
+        Assert.assertFalse(parse("9223372036854775808", Kind.LONG));
+        Assert.assertFalse(parse("-", Kind.LONG));
+        Assert.assertFalse(parse("", Kind.LONG));
+        Assert.assertFalse(parse("1.0", Kind.LONG));
+        Assert.assertFalse(parse(" 1", Kind.LONG));
+    }
+
+    @Test
+    public void testInt() {
+        Assert.assertTrue(parse("-2147483648", Kind.INT));
+        Assert.assertEquals(Integer.MIN_VALUE, parser.getLongValue());
+        Assert.assertFalse(parse("2147483648", Kind.INT));
+    }
+
+    @Test
+    public void testDouble() {
+        for (String value : new String[]{"0", "-1.5", "3.14159", ".5", "5.", "1e10", "2.5E-3", "+7",
+                "123456789012345678901234", "0.1234567890123456789", "1e300", "4.9e-324"}) {
+            Assert.assertTrue(value, parse(value, Kind.DOUBLE));
+            Assert.assertEquals(value, Double.parseDouble(value), parser.getDoubleValue(), 0);
+        }
+        for (String value : new String[]{"", ".", "-", "1e", "1.2.3", "1,5", "abc", "NaN"}) {
+            Assert.assertFalse(value, parse(value, Kind.DOUBLE));
+        }
+    }
+
+    @Test
+    public void testBoolean() {
+        Assert.assertTrue(parse("TRUE", Kind.BOOLEAN));
+        Assert.assertTrue(parser.getBooleanValue());
+        Assert.assertTrue(parse("false", Kind.BOOLEAN));
+        Assert.assertFalse(parser.getBooleanValue());
+        Assert.assertFalse(parse("yes", Kind.BOOLEAN));
+        Assert.assertFalse(parse("1", Kind.BOOLEAN));
+    }
+
+    @Test
+    public void testDate() {
+        for (String value : new String[]{"1970-01-01", "2024-02-29", "2000-02-29", "1969-12-31", "0001-01-01"}) {
+            Assert.assertTrue(value, parse(value, Kind.DATE));
+            Assert.assertEquals(value, LocalDate.parse(value).toEpochDay(), parser.getLongValue());
+        }
+        for (String value : new String[]{"2023-02-29", "1900-02-29", "2023-13-01", "2023-04-31", "2023-1-01",
+                "20230101", "2023-01-01T"}) {
+            Assert.assertFalse(value, parse(value, Kind.DATE));
+        }
+    }
+
+    @Test
+    public void testTimestamp() {
+        assertTimestamp("2023-05-06T07:08:09", "2023-05-06T07:08:09Z");
+        assertTimestamp("2023-05-06 07:08:09.5", "2023-05-06T07:08:09.500Z");
+        assertTimestamp("2023-05-06T07:08:09.1234567Z", "2023-05-06T07:08:09.123456Z");
+        assertTimestamp("2023-05-06T07:08:09+02:30", "2023-05-06T04:38:09Z");
+        assertTimestamp("1969-12-31T23:59:59.999999-01:00", "1970-01-01T00:59:59.999999Z");
+        for (String value : new String[]{"2023-05-06", "2023-05-06X07:08:09", "2023-05-06T24:00:00",
+                "2023-05-06T07:08:09.", "2023-05-06T07:08:09+0230", "2023-05-06T07:08:09 UTC"}) {
+            Assert.assertFalse(value, parse(value, Kind.TIMESTAMP));
+        }
+    }
+
+    @Test
+    public void testParsesInsideLargerArray() {
+        byte[] bytes = "x,123,y".getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(parser.tryParseInt(bytes, 2, 3));
+        Assert.assertEquals(123, parser.getLongValue());
+    }
+
+    private void assertLong(String value, long expected) {
+        Assert.assertTrue(value, parse(value, Kind.LONG));
+        Assert.assertEquals(expected, parser.getLongValue());
+    }
+
+    private void assertTimestamp(String value, String expected) {
+        Assert.assertTrue(value, parse(value, Kind.TIMESTAMP));
+        Assert.assertEquals(value, ChronoUnit.MICROS.between(Instant.EPOCH, Instant.parse(expected)),
+                parser.getLongValue());
+    }
+
+    private boolean parse(String value, Kind kind) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        switch (kind) {
+            case INT:
+                return parser.tryParseInt(bytes, 0, bytes.length);
+            case LONG:
+                return parser.tryParseLong(bytes, 0, bytes.length);
+            case DOUBLE:
+                return parser.tryParseDouble(bytes, 0, bytes.length);
+            case BOOLEAN:
+                return parser.tryParseBoolean(bytes, 0, bytes.length);
+            case DATE:
+                return parser.tryParseDate(bytes, 0, bytes.length);
+            default:
+                return parser.tryParseTimestamp(bytes, 0, bytes.length);
+        }
+    }
+
+    private enum Kind {
+        INT, LONG, DOUBLE, BOOLEAN, DATE, TIMESTAMP
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.pratyush.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+public class MappedRangeReaderTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadsStopAtWindowBoundaries() throws IOException {
+        File file = temporaryFolder.newFile();
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Files.write(file.toPath(), data);
+        try (MappedRangeReader reader = new MappedRangeReader(file.getPath(), 300)) {
+            Assert.assertEquals(1000, reader.length());
+            byte[] buffer = new byte[500];
+            Assert.assertEquals(50, reader.read(250, buffer, 0, 500));
+            Assert.assertEquals((byte) 250, buffer[0]);
+            Assert.assertEquals(100, reader.read(900, buffer, 0, 500));
+            Assert.assertEquals((byte) 999, buffer[99]);
+            Assert.assertEquals(-1, reader.read(1000, buffer, 0, 500));
+        }
+    }
+
+    @Test
+    public void testTruncatedFileFailsRead() throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), new byte[1000]);
+        try (MappedRangeReader reader = new MappedRangeReader(file.getPath(), 300)) {
+            byte[] buffer = new byte[100];
+            Assert.assertEquals(100, reader.read(0, buffer, 0, 100));
+            try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                truncate.setLength(200);
+            }
+            // still inside the file
+            Assert.assertEquals(100, reader.read(50, buffer, 0, 100));
+            // in the window mapped before the truncation and in one mapped after it
+            for (long position : new long[]{250, 500}) {
+                try {
+                    reader.read(position, buffer, 0, 100);
+                    Assert.fail("Read at " + position + " past the truncated end");
+                } catch (IOException e) {
+                    Assert.assertTrue(e.getMessage(), e.getMessage().contains("200"));
+                }
+            }
+        }
+    }
+}
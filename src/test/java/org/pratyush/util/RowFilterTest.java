@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.pratyush.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class RowFilterTest {
+    private static final String[] HEADER = {"id", "name", "price", "my col"};
+
+    @Test
+    public void testComparisons() {
+        Assert.assertTrue(matches("price > 9.5", "1,a,10,x"));
+        Assert.assertFalse(matches("price > 9.5", "1,a,9.5,x"));
+        Assert.assertTrue(matches("price >= 9.5 AND price <= 9.50", "1,a,9.5,x"));
+        // numeric literals compare numerically, fields that are no numbers never match
+        Assert.assertTrue(matches("price = 10", "1,a,1e1,x"));
+        Assert.assertFalse(matches("price != 10", "1,a,ten,x"));
+        Assert.assertTrue(matches("name < 'b'", "1,a,0,x"));
+        Assert.assertTrue(matches("name <> b", "1,a,0,x"));
+        Assert.assertTrue(matches("`my col` = 'it''s'", "1,a,0,it's"));
+        Assert.assertTrue(matches("\"my col\" = x", "1,a,0,x"));
+    }
+
+    @Test
+    public void testBooleanOperators() {
+        String filter = "NOT (id = 1 OR id = 2) AND name = a";
+        Assert.assertFalse(matches(filter, "1,a,0,x"));
+        Assert.assertTrue(matches(filter, "3,a,0,x"));
+        Assert.assertFalse(matches(filter, "3,b,0,x"));
+        // AND binds stronger than OR
+        Assert.assertTrue(matches("id = 1 OR id = 2 AND name = b", "1,a,0,x"));
+    }
+
+    @Test
+    public void testIn() {
+        Assert.assertTrue(matches("id IN (1, 2, 'x')", "2.0,a,0,x"));
+        Assert.assertTrue(matches("id IN (1, 2, 'x')", "x,a,0,x"));
+        Assert.assertFalse(matches("id IN (1, 2, 'x')", "3,a,0,x"));
+        Assert.assertTrue(matches("id NOT IN (1, 2)", "3,a,0,x"));
+        Assert.assertFalse(matches("id NOT IN (1, 2)", "1,a,0,x"));
+    }
+
+    @Test
+    public void testNullFields() {
+        // empty and missing fields only match IS NULL, negated comparisons included
+        for (String record : new String[]{",,,", "1"}) {
+            Assert.assertTrue(matches("name IS NULL", record));
+            Assert.assertFalse(matches("name IS NOT NULL", record));
+            Assert.assertFalse(matches("name = a", record));
+            Assert.assertFalse(matches("name != a", record));
+            Assert.assertFalse(matches("name IN (a, b)", record));
+            Assert.assertFalse(matches("name NOT IN (a, b)", record));
+        }
+        Assert.assertTrue(matches("name IS NOT NULL", "1,a"));
+    }
+
+    @Test
+    public void testBind() {
+        RowFilter filter = RowFilter.parse("price > 1 AND (name = a OR price < 5)");
+        Assert.assertArrayEquals(new int[]{2, 1}, filter.bind(HEADER));
+        Assert.assertArrayEquals(new int[]{2, 1}, filter.getColumns());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumn() {
+        RowFilter.parse("missing = 1").bind(HEADER);
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        for (String expression : new String[]{"", "id", "id = ", "id == 1", "id NOT = 1", "(id = 1", "id = 1 id",
+                "id IN ()", "name = 'open", "id = 1.2.3", "id ~ 1"}) {
+            try {
+                RowFilter.parse(expression);
+                Assert.fail("Expected '" + expression + "' to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static boolean matches(String expression, String record) {
+        RowFilter filter = RowFilter.parse(expression);
+        filter.bind(HEADER);
+        CsvTokenizer tokenizer = new CsvTokenizer(",");
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        tokenizer.tokenize(bytes, bytes.length);
+        return filter.test(tokenizer);
+    }
+}